@@ -0,0 +1,22 @@
+package com.automattic.elasticsearch.statsd.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary result counting the metrics sent, in average time mode JMH reports it as time per metric.
+ */
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+@State(Scope.Thread)
+public class MetricCounters {
+
+    public long metrics;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        this.metrics = 0;
+    }
+}
@@ -0,0 +1,62 @@
+package com.automattic.elasticsearch.statsd.benchmark;
+
+import com.automattic.elasticsearch.statsd.BatchingStatsDClient;
+import com.automattic.elasticsearch.statsd.StatsdTransport;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and batches metrics exactly like the real client but drops the packets in a transport without any socket,
+ * so the benchmarks measure the plugin and neither the network stack nor the local environment.
+ */
+public class NullStatsDClient extends BatchingStatsDClient {
+
+    private final NullTransport transport;
+
+    public NullStatsDClient() {
+        this(new NullTransport());
+    }
+
+    private NullStatsDClient(NullTransport transport) {
+        super("elasticsearch.benchmark", transport, DEFAULT_MAX_PACKET_BYTES, e -> {
+            throw new IllegalStateException("Unable to encode metrics", e);
+        }, null, null);
+        this.transport = transport;
+    }
+
+    public long getLines() {
+        return this.transport.lines;
+    }
+
+    public long getPackets() {
+        return this.transport.packets;
+    }
+
+    public long getBytes() {
+        return this.transport.bytes;
+    }
+
+    private static class NullTransport implements StatsdTransport {
+
+        private long lines;
+        private long packets;
+        private long bytes;
+
+        @Override
+        public void send(ByteBuffer packet) {
+            this.send(packet, 0);
+        }
+
+        @Override
+        public void send(ByteBuffer packet, int lines) {
+            this.lines += lines;
+            this.packets++;
+            this.bytes += packet.remaining();
+            packet.position(packet.limit());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
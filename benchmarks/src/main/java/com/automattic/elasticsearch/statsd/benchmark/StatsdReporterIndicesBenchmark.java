@@ -0,0 +1,86 @@
+package com.automattic.elasticsearch.statsd.benchmark;
+
+import com.automattic.elasticsearch.statsd.StatsdMetricNameCache;
+import com.automattic.elasticsearch.statsd.StatsdReporterIndices;
+import com.automattic.elasticsearch.statsd.StatsdTopIndices;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsFixtures;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One reporting cycle of the cluster wide, index and shard stats sent by the elected master.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class StatsdReporterIndicesBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int indices;
+
+    @Param({"5"})
+    public int shards;
+
+    @Param({"false", "true"})
+    public boolean reportShards;
+
+    /**
+     * Number of indices reported in full detail, 0 for all
+     */
+    @Param({"0", "50"})
+    public int top;
+
+    private IndicesStatsResponse response;
+    private StatsdMetricNameCache nameCache;
+    private StatsdTopIndices topIndices;
+    private NullStatsDClient client;
+    private long metricsPerCycle;
+
+    @Setup
+    public void setUp() {
+        this.response = IndicesStatsFixtures.response(this.indices, this.shards, 42);
+        // the per index grouping is built once and cached by the response
+        this.response.getIndices();
+        this.nameCache = new StatsdMetricNameCache();
+        this.topIndices = this.top == 0 ? null : new StatsdTopIndices(this.top, StatsdTopIndices.Dimension.STORE_SIZE);
+        this.client = new NullStatsDClient();
+
+        this.cycle();
+        this.metricsPerCycle = this.client.getLines();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.client.stop();
+    }
+
+    @Benchmark
+    public NullStatsDClient reportCycle(MetricCounters counters) {
+        this.cycle();
+        counters.metrics += this.metricsPerCycle;
+        return this.client;
+    }
+
+    private void cycle() {
+        new StatsdReporterIndices(this.response, true, this.reportShards, this.topIndices, null, this.nameCache)
+                .setStatsDClient(this.client)
+                .run();
+        this.client.flush();
+    }
+}
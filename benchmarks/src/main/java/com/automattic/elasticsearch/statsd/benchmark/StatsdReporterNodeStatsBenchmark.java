@@ -0,0 +1,113 @@
+package com.automattic.elasticsearch.statsd.benchmark;
+
+import com.automattic.elasticsearch.statsd.StatsdMetricNameCache;
+import com.automattic.elasticsearch.statsd.StatsdReporterNodeStats;
+import org.elasticsearch.Version;
+import org.elasticsearch.action.admin.cluster.node.stats.NodeStats;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.http.HttpStats;
+import org.elasticsearch.monitor.fs.FsInfo;
+import org.elasticsearch.monitor.jvm.JvmStats;
+import org.elasticsearch.monitor.os.OsProbe;
+import org.elasticsearch.monitor.process.ProcessProbe;
+import org.elasticsearch.threadpool.ThreadPoolStats;
+import org.elasticsearch.transport.TransportStats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One reporting cycle of the node stats sent by every node.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatsdReporterNodeStatsBenchmark {
+
+    private static final String[] THREAD_POOLS = {
+            "bulk", "fetch_shard_started", "fetch_shard_store", "flush", "force_merge", "generic", "get", "index",
+            "listener", "management", "refresh", "search", "snapshot", "warmer"
+    };
+
+    @Param({"false", "true"})
+    public boolean fsDetails;
+
+    @Param({"4"})
+    public int dataPaths;
+
+    private NodeStats nodeStats;
+    private StatsdMetricNameCache nameCache;
+    private NullStatsDClient client;
+    private long metricsPerCycle;
+
+    @Setup
+    public void setUp() {
+        List<ThreadPoolStats.Stats> threadPools = new ArrayList<>();
+        for (int i = 0; i < THREAD_POOLS.length; i++) {
+            threadPools.add(new ThreadPoolStats.Stats(THREAD_POOLS[i], 8, i, i % 4, i * 3, 16, 1_000_000L * i));
+        }
+        FsInfo.Path[] paths = new FsInfo.Path[this.dataPaths];
+        for (int i = 0; i < this.dataPaths; i++) {
+            paths[i] = new FsInfo.Path("/var/data/elasticsearch" + i, "/dev/sd" + (char) ('a' + i), 1L << 40, 1L << 39, 1L << 38);
+        }
+
+        this.nodeStats = new NodeStats(
+                new DiscoveryNode("benchmark", new InetSocketTransportAddress(InetAddress.getLoopbackAddress(), 9300), Version.CURRENT),
+                System.currentTimeMillis(),
+                null,
+                OsProbe.getInstance().osStats(),
+                ProcessProbe.getInstance().processStats(),
+                JvmStats.jvmStats(),
+                new ThreadPoolStats(threadPools),
+                new FsInfo(System.currentTimeMillis(), null, paths),
+                new TransportStats(12, 123_456, 1L << 32, 654_321, 1L << 33),
+                new HttpStats(3, 12_345),
+                null,
+                null,
+                null,
+                null
+        );
+        this.nameCache = new StatsdMetricNameCache();
+        this.client = new NullStatsDClient();
+
+        this.cycle();
+        this.metricsPerCycle = this.client.getLines();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.client.stop();
+    }
+
+    @Benchmark
+    public NullStatsDClient reportCycle(MetricCounters counters) {
+        this.cycle();
+        counters.metrics += this.metricsPerCycle;
+        return this.client;
+    }
+
+    private void cycle() {
+        new StatsdReporterNodeStats(this.nodeStats, "benchmark", this.fsDetails, this.nameCache)
+                .setStatsDClient(this.client)
+                .run();
+        this.client.flush();
+    }
+}
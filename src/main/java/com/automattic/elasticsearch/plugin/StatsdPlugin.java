@@ -1,26 +1,79 @@
 package com.automattic.elasticsearch.plugin;
 
+import com.automattic.elasticsearch.statsd.BatchingStatsDClient;
+import com.automattic.elasticsearch.statsd.StatsdCounterTracker;
+import com.automattic.elasticsearch.statsd.StatsdIndexGroups;
+import com.automattic.elasticsearch.statsd.StatsdMetricNameCache;
+import com.automattic.elasticsearch.statsd.StatsdMetricsRegistry;
+import com.automattic.elasticsearch.statsd.StatsdOperationStats;
+import com.automattic.elasticsearch.statsd.StatsdQueueingTransport;
 import com.automattic.elasticsearch.statsd.StatsdService;
+import com.automattic.elasticsearch.statsd.StatsdTopIndices;
+import com.automattic.elasticsearch.statsd.StatsdTransport;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.component.LifecycleComponent;
 import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.index.IndexModule;
 import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.watcher.ResourceWatcherService;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.Function;
 
 public class StatsdPlugin extends Plugin {
 
     public static final Setting<TimeValue> EVERY_S = Setting.timeSetting("metrics.statsd.every", TimeValue.timeValueMinutes(1), Setting.Property.NodeScope);
+    public static final Setting<TimeValue> NODE_EVERY_S = Setting.timeSetting("metrics.statsd.node.every", EVERY_S, Setting.Property.NodeScope);
+    public static final Setting<TimeValue> NODE_INDICES_EVERY_S = Setting.timeSetting("metrics.statsd.node_indices.every", EVERY_S, Setting.Property.NodeScope);
+    public static final Setting<TimeValue> INDICES_EVERY_S = Setting.timeSetting("metrics.statsd.indices.every", EVERY_S, Setting.Property.NodeScope);
+    public static final Setting<TimeValue> NODE_PROBE_CACHE_S = Setting.timeSetting("metrics.statsd.node.probe_cache", TimeValue.ZERO, Setting.Property.NodeScope);
+    public static final Setting<TimeValue> THREAD_POOL_SAMPLE_EVERY_S = Setting.timeSetting("metrics.statsd.thread_pool.sample_every", TimeValue.ZERO, TimeValue.ZERO, Setting.Property.NodeScope);
+    public static final Setting<TimeValue> THREAD_CPU_SAMPLE_EVERY_S = Setting.timeSetting("metrics.statsd.thread_cpu.sample_every", TimeValue.ZERO, TimeValue.ZERO, Setting.Property.NodeScope);
+    public static final Setting<TimeValue> INDICES_STATS_TIMEOUT_S = Setting.timeSetting("metrics.statsd.indices_stats_timeout", TimeValue.timeValueSeconds(30), Setting.Property.NodeScope);
     public static final Setting<String> HOST_S = new Setting<>("metrics.statsd.host", "localhost", Function.identity(), Setting.Property.NodeScope);
     public static final Setting<Integer> PORT_S = Setting.intSetting("metrics.statsd.port", 8125, 1, 65535, Setting.Property.NodeScope);
+    public static final Setting<StatsdTransport.Type> TRANSPORT_S = new Setting<>("metrics.statsd.transport", "udp", StatsdTransport.Type::parse, Setting.Property.NodeScope);
+    public static final Setting<Integer> QUEUE_SIZE_S = Setting.intSetting("metrics.statsd.queue_size", StatsdQueueingTransport.DEFAULT_CAPACITY, 1, Setting.Property.NodeScope);
+    public static final Setting<Integer> MAX_PACKET_BYTES_S = Setting.intSetting("metrics.statsd.max_packet_bytes", BatchingStatsDClient.DEFAULT_MAX_PACKET_BYTES, 64, 65507, Setting.Property.NodeScope);
+    public static final Setting<StatsdService.IndicesMode> INDICES_MODE_S = new Setting<>("metrics.statsd.indices_mode", "master", StatsdService.IndicesMode::parse, Setting.Property.NodeScope);
     public static final Setting<Boolean> REPORT_NODE_INDICES_S = Setting.boolSetting("metrics.statsd.report.node_indices", false, Setting.Property.NodeScope);
     public static final Setting<Boolean> REPORT_INDICES_S = Setting.boolSetting("metrics.statsd.report.indices", true, Setting.Property.NodeScope);
+    public static final Setting<Integer> INDICES_TOP_S = Setting.intSetting("metrics.statsd.indices.top", 0, 0, Setting.Property.NodeScope);
+    public static final Setting<StatsdTopIndices.Dimension> INDICES_TOP_BY_S = new Setting<>("metrics.statsd.indices.top_by", "indexing_rate", StatsdTopIndices.Dimension::parse, Setting.Property.NodeScope);
+    public static final Setting<Settings> INDEX_GROUPS_S = Setting.groupSetting("metrics.statsd.index_groups.", StatsdIndexGroups::validate, Setting.Property.NodeScope);
     public static final Setting<Boolean> REPORT_SHARDS_S = Setting.boolSetting("metrics.statsd.report.shards", false, Setting.Property.NodeScope);
+    // idle shards have to be reported before the counter tracker drops their previous values, both count reported cycles
+    public static final Setting<Integer> SHARDS_IDLE_CYCLES_S = Setting.intSetting("metrics.statsd.shards.idle_cycles", 1, 1, StatsdCounterTracker.ROTATION_CYCLES, Setting.Property.NodeScope);
+    public static final Setting<Boolean> REPORT_LATENCY_S = Setting.boolSetting("metrics.statsd.report.latency", false, Setting.Property.NodeScope);
+    public static final Setting<Boolean> REPORT_INDEX_LATENCY_S = Setting.boolSetting("metrics.statsd.report.index_latency", false, Setting.Property.NodeScope);
+    public static final Setting<Boolean> REPORT_TRANSLOG_S = Setting.boolSetting("metrics.statsd.report.translog", false, Setting.Property.NodeScope);
+    public static final Setting<Boolean> REPORT_RECOVERY_S = Setting.boolSetting("metrics.statsd.report.recovery", false, Setting.Property.NodeScope);
+    public static final Setting<Boolean> REPORT_BUFFER_POOLS_S = Setting.boolSetting("metrics.statsd.report.buffer_pools", false, Setting.Property.NodeScope);
+    public static final Setting<Boolean> REPORT_GC_PAUSES_S = Setting.boolSetting("metrics.statsd.report.gc_pauses", false, Setting.Property.NodeScope);
+    public static final Setting<Boolean> REPORT_BREAKERS_S = Setting.boolSetting("metrics.statsd.report.breakers", false, Setting.Property.NodeScope);
+    public static final Setting<Boolean> REPORT_INGEST_S = Setting.boolSetting("metrics.statsd.report.ingest", false, Setting.Property.NodeScope);
+    public static final Setting<Boolean> REPORT_DISCOVERY_S = Setting.boolSetting("metrics.statsd.report.discovery", false, Setting.Property.NodeScope);
+    public static final Setting<List<TimeValue>> SLOW_QUERY_THRESHOLDS_S = Setting.listSetting("metrics.statsd.slow.query_thresholds", Collections.emptyList(), s -> TimeValue.parseTimeValue(s, "metrics.statsd.slow.query_thresholds"), Setting.Property.NodeScope);
+    public static final Setting<List<TimeValue>> SLOW_INDEX_THRESHOLDS_S = Setting.listSetting("metrics.statsd.slow.index_thresholds", Collections.emptyList(), s -> TimeValue.parseTimeValue(s, "metrics.statsd.slow.index_thresholds"), Setting.Property.NodeScope);
     public static final Setting<Boolean> REPORT_FS_DETAILS_S = Setting.boolSetting("metrics.statsd.report.fs_details", false, Setting.Property.NodeScope);
+    public static final Setting<Boolean> SEND_UNCHANGED_S = Setting.boolSetting("metrics.statsd.send_unchanged", true, Setting.Property.NodeScope);
+    public static final Setting<Integer> HEARTBEAT_CYCLES_S = Setting.intSetting("metrics.statsd.heartbeat_cycles", 10, 1, Setting.Property.NodeScope);
+    public static final Setting<StatsdCounterTracker.Mode> COUNTER_MODE_S = new Setting<>("metrics.statsd.counter_mode", "gauge", StatsdCounterTracker.Mode::parse, Setting.Property.NodeScope);
+    public static final Setting<StatsdMetricNameCache.Format> FORMAT_S = new Setting<>("metrics.statsd.format", "plain", StatsdMetricNameCache.Format::parse, Setting.Property.NodeScope);
+    public static final Setting<List<String>> INCLUDE_S = Setting.listSetting("metrics.statsd.include", Collections.emptyList(), Function.identity(), Setting.Property.NodeScope);
+    public static final Setting<List<String>> EXCLUDE_S = Setting.listSetting("metrics.statsd.exclude", Collections.emptyList(), Function.identity(), Setting.Property.NodeScope);
+    public static final Setting<List<String>> INDICES_INCLUDE_S = Setting.listSetting("metrics.statsd.indices.include", Collections.emptyList(), Function.identity(), Setting.Property.NodeScope);
+    public static final Setting<List<String>> INDICES_EXCLUDE_S = Setting.listSetting("metrics.statsd.indices.exclude", Collections.emptyList(), Function.identity(), Setting.Property.NodeScope);
     public static final Setting<String> NODE_NAME_S = new Setting<>("metrics.statsd.node_name", "", Function.identity(), Setting.Property.NodeScope);
     public static final Setting<String> PREFIX_S = new Setting<>("metrics.statsd.prefix", "", Function.identity(), Setting.Property.NodeScope);
 
@@ -28,22 +81,89 @@ public class StatsdPlugin extends Plugin {
     // disable http stats when running integrations tests
     public static final Setting<Boolean> TEST_MODE_S = Setting.boolSetting("metrics.statsd.test_mode", false, Setting.Property.NodeScope);
 
+    private final StatsdOperationStats operationStats;
+    private final StatsdMetricsRegistry metricsRegistry = new StatsdMetricsRegistry();
+
+    public StatsdPlugin(Settings settings) {
+        this.operationStats = new StatsdOperationStats(
+                REPORT_LATENCY_S.get(settings),
+                REPORT_INDEX_LATENCY_S.get(settings),
+                StatsdOperationStats.slowThresholds(SLOW_QUERY_THRESHOLDS_S.get(settings), SLOW_INDEX_THRESHOLDS_S.get(settings))
+        );
+    }
+
     @Override
     public List<Setting<?>> getSettings() {
         return Arrays.asList(
                 EVERY_S,
+                NODE_EVERY_S,
+                NODE_INDICES_EVERY_S,
+                INDICES_EVERY_S,
+                NODE_PROBE_CACHE_S,
+                THREAD_POOL_SAMPLE_EVERY_S,
+                THREAD_CPU_SAMPLE_EVERY_S,
+                INDICES_STATS_TIMEOUT_S,
                 HOST_S,
                 PORT_S,
+                TRANSPORT_S,
+                QUEUE_SIZE_S,
+                MAX_PACKET_BYTES_S,
+                INDICES_MODE_S,
                 REPORT_NODE_INDICES_S,
                 REPORT_INDICES_S,
+                INDICES_TOP_S,
+                INDICES_TOP_BY_S,
+                INDEX_GROUPS_S,
                 REPORT_SHARDS_S,
+                SHARDS_IDLE_CYCLES_S,
+                REPORT_LATENCY_S,
+                REPORT_INDEX_LATENCY_S,
+                REPORT_TRANSLOG_S,
+                REPORT_RECOVERY_S,
+                REPORT_BUFFER_POOLS_S,
+                REPORT_GC_PAUSES_S,
+                REPORT_BREAKERS_S,
+                REPORT_INGEST_S,
+                REPORT_DISCOVERY_S,
+                SLOW_QUERY_THRESHOLDS_S,
+                SLOW_INDEX_THRESHOLDS_S,
                 REPORT_FS_DETAILS_S,
+                SEND_UNCHANGED_S,
+                HEARTBEAT_CYCLES_S,
+                COUNTER_MODE_S,
+                FORMAT_S,
+                INCLUDE_S,
+                EXCLUDE_S,
+                INDICES_INCLUDE_S,
+                INDICES_EXCLUDE_S,
                 NODE_NAME_S,
                 PREFIX_S,
                 TEST_MODE_S
         );
     }
 
+    @Override
+    public Collection<Object> createComponents(Client client, ClusterService clusterService, ThreadPool threadPool,
+                                               ResourceWatcherService resourceWatcherService, ScriptService scriptService,
+                                               NamedXContentRegistry xContentRegistry) {
+        return Arrays.asList(this.operationStats, this.metricsRegistry);
+    }
+
+    /**
+     * The registry of metrics sent along with the node stats, also bound for injection.
+     */
+    public StatsdMetricsRegistry getMetricsRegistry() {
+        return this.metricsRegistry;
+    }
+
+    @Override
+    public void onIndexModule(IndexModule indexModule) {
+        // the listeners run on the hot path of every search and indexing operation, only add them if needed
+        if (this.operationStats.isEnabled()) {
+            this.operationStats.onIndexModule(indexModule);
+        }
+    }
+
     @Override
     public Collection<Class<? extends LifecycleComponent>> getGuiceServiceClasses() {
                 Collection<Class<? extends LifecycleComponent>> list = new ArrayList<>(1);
@@ -0,0 +1,443 @@
+package com.automattic.elasticsearch.statsd;
+
+import com.timgroup.statsd.ConvenienceMethodProvidingStatsDClient;
+import com.timgroup.statsd.StatsDClientErrorHandler;
+import com.timgroup.statsd.StatsDClientException;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * StatsD client which packs newline separated metric lines into datagrams of at most {@code maxPacketBytes}
+ * instead of sending one datagram per metric. Lines are buffered until the packet is full or {@link #flush()}
+ * is called, so callers have to flush once they are done with a batch of metrics.
+ *
+ * Metric names are passed as separate segments which are encoded with {@link StatsdLineEncoder} straight into
+ * a reused buffer, so sending a metric does not allocate.
+ */
+public class BatchingStatsDClient extends ConvenienceMethodProvidingStatsDClient {
+
+    public static final int DEFAULT_MAX_PACKET_BYTES = 1432;
+
+    private static final byte NAME_SEPARATOR = '.';
+    private static final byte VALUE_SEPARATOR = ':';
+    private static final byte LINE_SEPARATOR = '\n';
+    private static final byte[] GAUGE = {'|', 'g'};
+    private static final byte[] COUNTER = {'|', 'c'};
+    private static final byte[] TIMER = {'|', 'm', 's'};
+    private static final byte[] SET = {'|', 's'};
+    private static final byte[] SAMPLE_RATE = {'|', '@'};
+    private static final byte[] NO_TAGS = new byte[0];
+
+    private final byte[] prefix;
+    private final StatsdTransport transport;
+    private final ByteBuffer packet;
+    private final ByteBuffer line;
+    private final StatsDClientErrorHandler handler;
+    private final StatsdChangeTracker changeTracker;
+    private final StatsdCounterTracker counterTracker;
+    private long lineKey;
+    private int lines;
+    private int packetLines;
+
+    public BatchingStatsDClient(String prefix, String host, int port, int maxPacketBytes, StatsDClientErrorHandler handler) throws StatsDClientException {
+        this(prefix, host, port, maxPacketBytes, handler, null, null);
+    }
+
+    /**
+     * @param changeTracker  if not null, gauges whose value did not change since they were last sent are skipped
+     * @param counterTracker if not null, cumulative counters are sent as deltas or rates instead of gauges
+     */
+    public BatchingStatsDClient(String prefix, String host, int port, int maxPacketBytes, StatsDClientErrorHandler handler,
+                                StatsdChangeTracker changeTracker, StatsdCounterTracker counterTracker) throws StatsDClientException {
+        this(prefix, openUdp(host, port), maxPacketBytes, handler, changeTracker, counterTracker);
+    }
+
+    /**
+     * @param transport      sends the packets, closed by {@link #stop()}
+     * @param changeTracker  if not null, gauges whose value did not change since they were last sent are skipped
+     * @param counterTracker if not null, cumulative counters are sent as deltas or rates instead of gauges
+     */
+    public BatchingStatsDClient(String prefix, StatsdTransport transport, int maxPacketBytes, StatsDClientErrorHandler handler,
+                                StatsdChangeTracker changeTracker, StatsdCounterTracker counterTracker) {
+        this.prefix = (prefix == null || prefix.trim().isEmpty()) ? new byte[0] : (prefix.trim() + ".").getBytes(StandardCharsets.UTF_8);
+        this.transport = transport;
+        this.packet = ByteBuffer.allocateDirect(maxPacketBytes);
+        this.line = ByteBuffer.allocate(maxPacketBytes);
+        this.handler = handler;
+        this.changeTracker = changeTracker;
+        this.counterTracker = counterTracker;
+    }
+
+    private static StatsdTransport openUdp(String host, int port) throws StatsDClientException {
+        try {
+            return new StatsdUdpTransport(host, port);
+        } catch (Exception e) {
+            throw new StatsDClientException("Failed to start StatsD client", e);
+        }
+    }
+
+    /**
+     * Sends the gauge {@code scope.statKey} from already encoded name parts, tagged with the tags of the scope. Like
+     * all scope based metrics it is dropped if the scope does not report it.
+     */
+    public synchronized void gauge(StatsdMetricScope scope, byte[] statKey, long value) {
+        if (!scope.reports(statKey)) {
+            return;
+        }
+        try {
+            this.beginLine(scope.getName(), statKey);
+            if (this.isUnchanged(value, scope.getTags())) {
+                return;
+            }
+            this.putGaugeReset(value < 0, scope.getTags());
+            StatsdLineEncoder.putLong(this.line, value);
+            this.line.put(GAUGE);
+            this.line.put(scope.getTags());
+        } catch (BufferOverflowException e) {
+            this.lineTooLong(e);
+            return;
+        }
+        this.endLine();
+        this.recordLine(value);
+    }
+
+    /**
+     * Sends the gauge {@code scope.statKey} from already encoded name parts, tagged with the tags of the scope.
+     * Values which are not finite are dropped.
+     */
+    public synchronized void gauge(StatsdMetricScope scope, byte[] statKey, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || !scope.reports(statKey)) {
+            return;
+        }
+        try {
+            this.beginLine(scope.getName(), statKey);
+            if (this.isUnchanged(Double.doubleToLongBits(value), scope.getTags())) {
+                return;
+            }
+            this.putGaugeReset(value < 0, scope.getTags());
+            StatsdLineEncoder.putDouble(this.line, value);
+            this.line.put(GAUGE);
+            this.line.put(scope.getTags());
+        } catch (BufferOverflowException e) {
+            this.lineTooLong(e);
+            return;
+        }
+        this.endLine();
+        this.recordLine(Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Sends the cumulative total {@code scope.statKey} from already encoded name parts as configured by the counter
+     * tracker, tagged with the tags of the scope.
+     */
+    public synchronized void counter(StatsdMetricScope scope, byte[] statKey, long total) {
+        if (this.counterTracker == null || this.counterTracker.getMode() == StatsdCounterTracker.Mode.GAUGE) {
+            this.gauge(scope, statKey, total);
+            return;
+        }
+        if (!scope.reports(statKey)) {
+            return;
+        }
+        try {
+            this.beginLine(scope.getName(), statKey);
+            if (!this.putCounterValue(total, scope.getTags())) {
+                return;
+            }
+            this.line.put(scope.getTags());
+        } catch (BufferOverflowException e) {
+            this.lineTooLong(e);
+            return;
+        }
+        this.endLine();
+    }
+
+    /**
+     * Sends the counter {@code scope.statKey} from already encoded name parts, tagged with the tags of the scope.
+     * Unlike {@link #counter(StatsdMetricScope, byte[], long)} the value is a delta and always sent as a counter.
+     */
+    public synchronized void count(StatsdMetricScope scope, byte[] statKey, long delta) {
+        this.appendLine(scope, statKey, delta, COUNTER);
+    }
+
+    /**
+     * Sends the timer {@code scope.statKey} from already encoded name parts, tagged with the tags of the scope.
+     */
+    public synchronized void time(StatsdMetricScope scope, byte[] statKey, long timeInMs) {
+        this.appendLine(scope, statKey, timeInMs, TIMER);
+    }
+
+    @Override
+    public synchronized void count(String aspect, long delta, double sampleRate) {
+        this.appendLine(aspect, delta, COUNTER, sampleRate);
+    }
+
+    /**
+     * Sends the gauge {@code aspect}. Only the gauges of metric scopes are checked against the change tracker.
+     */
+    @Override
+    public synchronized void recordGaugeValue(String aspect, long value) {
+        try {
+            this.beginLine(aspect);
+            this.putGaugeReset(value < 0, NO_TAGS);
+            StatsdLineEncoder.putLong(this.line, value);
+            this.line.put(GAUGE);
+        } catch (BufferOverflowException e) {
+            this.lineTooLong(e);
+            return;
+        }
+        this.endLine();
+    }
+
+    /**
+     * Sends the gauge {@code aspect}, values which are not finite are dropped. Only the gauges of metric scopes are
+     * checked against the change tracker.
+     */
+    @Override
+    public synchronized void recordGaugeValue(String aspect, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        try {
+            this.beginLine(aspect);
+            this.putGaugeReset(value < 0, NO_TAGS);
+            StatsdLineEncoder.putDouble(this.line, value);
+            this.line.put(GAUGE);
+        } catch (BufferOverflowException e) {
+            this.lineTooLong(e);
+            return;
+        }
+        this.endLine();
+    }
+
+    @Override
+    public synchronized void recordGaugeDelta(String aspect, long delta) {
+        try {
+            this.beginLine(aspect);
+            if (delta >= 0) {
+                this.line.put((byte) '+');
+            }
+            StatsdLineEncoder.putLong(this.line, delta);
+            this.line.put(GAUGE);
+        } catch (BufferOverflowException e) {
+            this.lineTooLong(e);
+            return;
+        }
+        this.endLine();
+    }
+
+    @Override
+    public synchronized void recordGaugeDelta(String aspect, double delta) {
+        if (Double.isNaN(delta) || Double.isInfinite(delta)) {
+            return;
+        }
+        try {
+            this.beginLine(aspect);
+            if (delta >= 0) {
+                this.line.put((byte) '+');
+            }
+            StatsdLineEncoder.putDouble(this.line, delta);
+            this.line.put(GAUGE);
+        } catch (BufferOverflowException e) {
+            this.lineTooLong(e);
+            return;
+        }
+        this.endLine();
+    }
+
+    @Override
+    public synchronized void recordSetEvent(String aspect, String eventName) {
+        try {
+            this.beginLine(aspect);
+            StatsdLineEncoder.putChars(this.line, eventName);
+            this.line.put(SET);
+        } catch (BufferOverflowException e) {
+            this.lineTooLong(e);
+            return;
+        }
+        this.endLine();
+    }
+
+    @Override
+    public synchronized void recordExecutionTime(String aspect, long timeInMs, double sampleRate) {
+        this.appendLine(aspect, timeInMs, TIMER, sampleRate);
+    }
+
+    /**
+     * Sends whatever is left in the current packet.
+     */
+    public synchronized void flush() {
+        if (this.packet.position() == 0) {
+            return;
+        }
+        this.packet.flip();
+        try {
+            this.send(this.packet, this.packetLines);
+        } catch (Exception e) {
+            this.handler.handle(e);
+        } finally {
+            this.packet.clear();
+            this.packetLines = 0;
+        }
+    }
+
+    /**
+     * Writes a single packet of {@code lines} newline separated metric lines to StatsD.
+     */
+    protected void send(ByteBuffer packet, int lines) throws IOException {
+        this.transport.send(packet, lines);
+    }
+
+    @Override
+    public void stop() {
+        this.flush();
+        try {
+            this.transport.close();
+        } catch (IOException e) {
+            this.handler.handle(e);
+        }
+    }
+
+    private void appendLine(StatsdMetricScope scope, byte[] statKey, long value, byte[] type) {
+        if (!scope.reports(statKey)) {
+            return;
+        }
+        try {
+            this.beginLine(scope.getName(), statKey);
+            StatsdLineEncoder.putLong(this.line, value);
+            this.line.put(type);
+            this.line.put(scope.getTags());
+        } catch (BufferOverflowException e) {
+            this.lineTooLong(e);
+            return;
+        }
+        this.endLine();
+    }
+
+    private void appendLine(String aspect, long value, byte[] type, double sampleRate) {
+        try {
+            this.beginLine(aspect);
+            StatsdLineEncoder.putLong(this.line, value);
+            this.line.put(type);
+            if (sampleRate != 1.0) {
+                this.line.put(SAMPLE_RATE);
+                StatsdLineEncoder.putDouble(this.line, sampleRate);
+            }
+        } catch (BufferOverflowException e) {
+            this.lineTooLong(e);
+            return;
+        }
+        this.endLine();
+    }
+
+    /**
+     * Starts a new line in the line buffer with the prefix and name, up to and including the value separator.
+     */
+    private void beginLine(String aspect) {
+        this.line.clear();
+        this.lines = 1;
+        this.line.put(this.prefix);
+        StatsdLineEncoder.putChars(this.line, aspect);
+        this.line.put(VALUE_SEPARATOR);
+    }
+
+    private void beginLine(byte[] name, byte[] statKey) {
+        this.line.clear();
+        this.lines = 1;
+        this.line.put(this.prefix);
+        this.line.put(name);
+        this.line.put(NAME_SEPARATOR);
+        this.line.put(statKey);
+        this.line.put(VALUE_SEPARATOR);
+    }
+
+    /**
+     * Checks the gauge started in the line buffer against the last value sent, if unchanged gauges are suppressed.
+     */
+    private boolean isUnchanged(long value, byte[] tags) {
+        if (this.changeTracker == null) {
+            return false;
+        }
+        this.lineKey = this.lineKey(tags);
+        return !this.changeTracker.changed(this.lineKey, value);
+    }
+
+    /**
+     * Records the gauge checked by {@link #isUnchanged(long, byte[])} as sent, once its line made it into the packet.
+     */
+    private void recordLine(long value) {
+        if (this.changeTracker != null) {
+            this.changeTracker.record(this.lineKey, value);
+        }
+    }
+
+    /**
+     * Key of the metric started in the line buffer with the given tags.
+     */
+    private long lineKey(byte[] tags) {
+        long key = StatsdChangeTracker.key(this.line.array(), this.line.arrayOffset(), this.line.position());
+        return tags.length == 0 ? key : StatsdChangeTracker.key(key, tags, 0, tags.length);
+    }
+
+    /**
+     * Writes the delta or rate of the counter started in the line buffer, returns false if there is nothing to send.
+     */
+    private boolean putCounterValue(long total, byte[] tags) {
+        long key = this.lineKey(tags);
+        if (this.counterTracker.getMode() == StatsdCounterTracker.Mode.COUNT) {
+            long delta = this.counterTracker.delta(key, total, System.nanoTime());
+            if (delta == StatsdCounterTracker.NO_DELTA || delta == 0) {
+                return false;
+            }
+            StatsdLineEncoder.putLong(this.line, delta);
+            this.line.put(COUNTER);
+        } else {
+            double rate = this.counterTracker.rate(key, total, System.nanoTime());
+            if (Double.isNaN(rate)) {
+                return false;
+            }
+            StatsdLineEncoder.putDouble(this.line, rate);
+            this.line.put(GAUGE);
+        }
+        return true;
+    }
+
+    /**
+     * A leading sign turns a gauge into a delta, so negative absolute values have to be sent after a reset to 0.
+     * Repeats the name already in the line buffer after the reset.
+     */
+    private void putGaugeReset(boolean negative, byte[] tags) {
+        if (!negative) {
+            return;
+        }
+        int nameLength = this.line.position();
+        this.line.put((byte) '0');
+        this.line.put(GAUGE);
+        this.line.put(tags);
+        this.line.put(LINE_SEPARATOR);
+        this.lines++;
+        this.line.put(this.line.array(), this.line.arrayOffset(), nameLength);
+    }
+
+    /**
+     * Moves the finished line into the current packet, sending the packet first if the line does not fit anymore.
+     */
+    private void endLine() {
+        this.line.flip();
+        int required = this.packet.position() == 0 ? this.line.remaining() : this.line.remaining() + 1;
+        if (required > this.packet.remaining()) {
+            this.flush();
+        }
+        if (this.packet.position() > 0) {
+            this.packet.put(LINE_SEPARATOR);
+        }
+        this.packet.put(this.line);
+        this.packetLines += this.lines;
+    }
+
+    private void lineTooLong(BufferOverflowException e) {
+        this.handler.handle(new StatsDClientException("Metric line does not fit into a single packet", e));
+    }
+}
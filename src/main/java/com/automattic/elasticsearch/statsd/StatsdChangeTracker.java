@@ -0,0 +1,89 @@
+package com.automattic.elasticsearch.statsd;
+
+import com.carrotsearch.hppc.LongLongHashMap;
+
+/**
+ * Remembers the last value sent for every gauge, keyed by a 64 bit hash of its encoded name, so gauges whose value
+ * did not change can be skipped. Every gauge is still resent once every {@code heartbeatCycles} cycles so it does
+ * not go stale downstream; the heartbeat is staggered by key to spread the resends over the cycles.
+ *
+ * Values are kept in two generations which rotate every {@code heartbeatCycles} cycles, so entries of metrics that
+ * are no longer reported, e.g. of deleted indices, are dropped after two rotations.
+ */
+public class StatsdChangeTracker {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int heartbeatCycles;
+    private LongLongHashMap current = new LongLongHashMap();
+    private LongLongHashMap previous = new LongLongHashMap();
+    private long cycle;
+
+    public StatsdChangeTracker(int heartbeatCycles) {
+        if (heartbeatCycles < 1) {
+            throw new IllegalArgumentException("heartbeatCycles must be at least 1 but was " + heartbeatCycles);
+        }
+        this.heartbeatCycles = heartbeatCycles;
+    }
+
+    /**
+     * Starts a new reporting cycle.
+     */
+    public synchronized void nextCycle() {
+        this.cycle++;
+        if (this.cycle % this.heartbeatCycles == 0) {
+            LongLongHashMap rotated = this.previous;
+            rotated.clear();
+            this.previous = this.current;
+            this.current = rotated;
+        }
+    }
+
+    /**
+     * Returns if the value of the given key has to be sent, i.e. if it changed since it was last recorded or is due
+     * for its heartbeat. Changed values are not recorded here, call {@link #record(long, long)} once the value was
+     * actually sent, so a value which could not be sent is not suppressed in the following cycles.
+     */
+    public synchronized boolean changed(long key, long value) {
+        boolean heartbeat = Math.floorMod(key + this.cycle, this.heartbeatCycles) == 0;
+
+        int index = this.current.indexOf(key);
+        if (this.current.indexExists(index)) {
+            return heartbeat || this.current.indexGet(index) != value;
+        }
+
+        int previousIndex = this.previous.indexOf(key);
+        if (heartbeat || !this.previous.indexExists(previousIndex) || this.previous.indexGet(previousIndex) != value) {
+            return true;
+        }
+        // the value was sent before, keep it in the current generation so it is not resent after the next rotation
+        this.current.indexInsert(index, key, value);
+        return false;
+    }
+
+    /**
+     * Records the value of the given key as sent.
+     */
+    public synchronized void record(long key, long value) {
+        this.current.put(key, value);
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the given bytes.
+     */
+    public static long key(byte[] bytes, int offset, int length) {
+        return key(FNV_OFFSET_BASIS, bytes, offset, length);
+    }
+
+    /**
+     * Continues the 64 bit FNV-1a hash {@code hash} with the given bytes.
+     */
+    public static long key(long hash, byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= bytes[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,134 @@
+package com.automattic.elasticsearch.statsd;
+
+import com.carrotsearch.hppc.LongLongHashMap;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns the cumulative totals reported by Elasticsearch, e.g. {@code indexing.index_total}, into per cycle deltas or
+ * per second rates by remembering the previous value and time of every counter, keyed by a 64 bit hash of its
+ * encoded name.
+ *
+ * Nothing is emitted for the first observation of a counter. A counter that went down was reset, e.g. because a
+ * shard relocated, a node restarted or a sum across shards lost a member, so it is re-baselined without emitting
+ * anything rather than guessing the delta. Entries are kept in two generations which rotate every
+ * {@link #ROTATION_CYCLES} cycles, so counters that are no longer reported are dropped.
+ */
+public class StatsdCounterTracker {
+
+    public static final long NO_DELTA = Long.MIN_VALUE;
+
+    /**
+     * A counter reported at least once every this many cycles always keeps its previous value.
+     */
+    public static final int ROTATION_CYCLES = 10;
+
+    public enum Mode {
+        /**
+         * Cumulative totals are sent as gauges, as they are reported by Elasticsearch
+         */
+        GAUGE,
+        /**
+         * The increase since the last cycle is sent as a StatsD counter
+         */
+        COUNT,
+        /**
+         * The increase per second since the last cycle is sent as a gauge
+         */
+        RATE;
+
+        public static Mode parse(String mode) {
+            try {
+                return Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown counter mode [" + mode + "], expected one of [gauge, count, rate]");
+            }
+        }
+    }
+
+    private final Mode mode;
+    private Generation current = new Generation();
+    private Generation previous = new Generation();
+    private long cycle;
+
+    public StatsdCounterTracker(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return this.mode;
+    }
+
+    /**
+     * Starts a new reporting cycle.
+     */
+    public synchronized void nextCycle() {
+        this.cycle++;
+        if (this.cycle % ROTATION_CYCLES == 0) {
+            Generation rotated = this.previous;
+            rotated.clear();
+            this.previous = this.current;
+            this.current = rotated;
+        }
+    }
+
+    /**
+     * Records the value of the given counter and returns its increase since it was last recorded, or
+     * {@link #NO_DELTA} if it was not seen before or has been reset.
+     */
+    public synchronized long delta(long key, long value, long timeInNanos) {
+        long previousValue = this.update(key, value, timeInNanos);
+        if (previousValue == NO_DELTA || value < previousValue) {
+            return NO_DELTA;
+        }
+        return value - previousValue;
+    }
+
+    /**
+     * Records the value of the given counter and returns its increase per second since it was last recorded, or
+     * {@link Double#NaN} if it was not seen before or has been reset.
+     */
+    public synchronized double rate(long key, long value, long timeInNanos) {
+        // nano times may be zero or negative, so only the presence of a key tells whether it was seen before
+        LongLongHashMap times = this.current.times.containsKey(key) ? this.current.times : this.previous.times;
+        long previousTime = times.get(key);
+        long previousValue = this.update(key, value, timeInNanos);
+        if (previousValue == NO_DELTA || value < previousValue || timeInNanos <= previousTime) {
+            return Double.NaN;
+        }
+        return (value - previousValue) * (double) TimeUnit.SECONDS.toNanos(1) / (timeInNanos - previousTime);
+    }
+
+    /**
+     * Stores the value and time of the given counter in the current generation and returns the previous value.
+     */
+    private long update(long key, long value, long timeInNanos) {
+        long previousValue = NO_DELTA;
+
+        int index = this.current.values.indexOf(key);
+        if (this.current.values.indexExists(index)) {
+            previousValue = this.current.values.indexReplace(index, value);
+        } else {
+            this.current.values.indexInsert(index, key, value);
+            int previousIndex = this.previous.values.indexOf(key);
+            if (this.previous.values.indexExists(previousIndex)) {
+                previousValue = this.previous.values.indexGet(previousIndex);
+            }
+        }
+        this.current.times.put(key, timeInNanos);
+
+        return previousValue;
+    }
+
+    private static class Generation {
+
+        private final LongLongHashMap values = new LongLongHashMap();
+        private final LongLongHashMap times = new LongLongHashMap();
+
+        void clear() {
+            this.values.clear();
+            this.times.clear();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.automattic.elasticsearch.statsd;
+
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a task at a fixed rate aligned to wall clock boundaries, e.g. every 10s on :00, :10, :20 and so on. Every run
+ * schedules the next one for the next boundary, so the collection time does not add up to drift. A run that takes
+ * longer than the interval is counted as an overrun and the ticks it missed are skipped instead of queued. If the
+ * wall clock steps back by more than an interval, the runs are aligned to the new boundaries, and no run is ever
+ * delayed by more than an interval.
+ */
+public class StatsdFixedRateTask implements Runnable {
+
+    private final ScheduledExecutorService scheduler;
+    private final long intervalMillis;
+    private final Runnable task;
+    private final Logger logger;
+    private final AtomicLong overruns = new AtomicLong();
+
+    private volatile boolean cancelled;
+    private volatile ScheduledFuture<?> next;
+    private long tickMillis;
+
+    public StatsdFixedRateTask(ScheduledExecutorService scheduler, TimeValue interval, Runnable task, Logger logger) {
+        if (interval.millis() <= 0) {
+            throw new IllegalArgumentException("interval must be positive but was " + interval);
+        }
+        this.scheduler = scheduler;
+        this.intervalMillis = interval.millis();
+        this.task = task;
+        this.logger = logger;
+    }
+
+    /**
+     * Schedules the first run for the next wall clock boundary.
+     */
+    public synchronized void start() {
+        this.schedule(nextTick(System.currentTimeMillis(), this.intervalMillis));
+    }
+
+    public void cancel() {
+        this.cancelled = true;
+        ScheduledFuture<?> next = this.next;
+        if (next != null) {
+            next.cancel(false);
+        }
+    }
+
+    /**
+     * Number of ticks skipped because a run took longer than the interval.
+     */
+    public long getOverruns() {
+        return this.overruns.get();
+    }
+
+    @Override
+    public void run() {
+        if (this.cancelled) {
+            return;
+        }
+
+        try {
+            this.task.run();
+        } catch (Exception e) {
+            this.logger.error("Exception thrown from the StatsD reporter task", e);
+        }
+
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            long missed = missedTicks(this.tickMillis, now, this.intervalMillis);
+            if (missed > 0) {
+                this.overruns.addAndGet(missed);
+                this.logger.warn(
+                        "StatsD reporting took longer than [{}], skipping [{}] interval(s)",
+                        TimeValue.timeValueMillis(this.intervalMillis), missed
+                );
+            }
+            this.schedule(followingTick(this.tickMillis, now, this.intervalMillis));
+        }
+    }
+
+    private void schedule(long tickMillis) {
+        if (this.cancelled) {
+            return;
+        }
+        this.tickMillis = tickMillis;
+        try {
+            this.next = this.scheduler.schedule(
+                    this,
+                    delay(tickMillis, System.currentTimeMillis(), this.intervalMillis),
+                    TimeUnit.MILLISECONDS
+            );
+        } catch (RejectedExecutionException e) {
+            if (!this.cancelled) {
+                this.logger.error("Unable to schedule the StatsD reporter task", e);
+            }
+        }
+    }
+
+    /**
+     * The first multiple of the interval after the given time.
+     */
+    public static long nextTick(long nowMillis, long intervalMillis) {
+        return (nowMillis / intervalMillis + 1) * intervalMillis;
+    }
+
+    /**
+     * The tick to run next after the run of the given tick finished at the given time. A run finishing early because
+     * of clock adjustments still moves on by one interval, a run finishing after the following tick or a clock that
+     * stepped back by more than an interval starts over from the next boundary.
+     */
+    public static long followingTick(long tickMillis, long nowMillis, long intervalMillis) {
+        long following = tickMillis + intervalMillis;
+        if (nowMillis >= following || nowMillis < tickMillis - intervalMillis) {
+            return nextTick(nowMillis, intervalMillis);
+        }
+        return following;
+    }
+
+    /**
+     * Number of ticks missed by the run of the given tick finishing at the given time.
+     */
+    public static long missedTicks(long tickMillis, long nowMillis, long intervalMillis) {
+        long following = tickMillis + intervalMillis;
+        return nowMillis < following ? 0 : (nowMillis - following) / intervalMillis + 1;
+    }
+
+    /**
+     * The delay until the given tick, never negative and never longer than an interval, even if the wall clock
+     * stepped.
+     */
+    public static long delay(long tickMillis, long nowMillis, long intervalMillis) {
+        return Math.max(0, Math.min(intervalMillis, tickMillis - nowMillis));
+    }
+}
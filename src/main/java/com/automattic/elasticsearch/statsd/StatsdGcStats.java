@@ -0,0 +1,199 @@
+package com.automattic.elasticsearch.statsd;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import org.elasticsearch.monitor.jvm.GcNames;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records every garbage collection from the notifications of the garbage collector MXBeans: the duration per
+ * collector into a latency histogram, the number of collections per cause, and from the memory pool sizes before and
+ * after each collection the bytes allocated in and promoted from the young generation. The cumulative collection
+ * counts and times of the node stats cannot tell a single long pause from many short ones.
+ *
+ * The duration of a collection is its pause for the stop the world collectors, but the duration of the whole cycle
+ * for the concurrent ones (CMS, G1 concurrent cycles). Notifications are delivered on a single JVM thread, the
+ * recorders do not block it.
+ */
+public class StatsdGcStats implements NotificationListener {
+
+    private final ConcurrentMap<String, Collector> collectors = new ConcurrentHashMap<>();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder promotedBytes = new LongAdder();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+
+    // only accessed from the notification thread
+    private long youngUsedAfterLastGc = -1;
+
+    // only accessed by the reporter
+    private long reportedAllocatedBytes;
+    private long reportedPromotedBytes;
+    private long reportedAtNanos = System.nanoTime();
+
+    /**
+     * Subscribes to the notifications of all garbage collectors of the JVM.
+     */
+    public synchronized void start() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) gc;
+                emitter.addNotificationListener(this, null, null);
+                this.emitters.add(emitter);
+            }
+        }
+    }
+
+    public synchronized void stop() {
+        for (NotificationEmitter emitter : this.emitters) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (ListenerNotFoundException e) {
+                // never added
+            }
+        }
+        this.emitters.clear();
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        this.onGc(info.getGcName(), info.getGcCause(), info.getGcInfo());
+    }
+
+    void onGc(String gcName, String cause, GcInfo gcInfo) {
+        // the same names as the collectors of the node stats, e.g. young and old
+        Collector collector = this.collectors.computeIfAbsent(GcNames.getByGcName(gcName, gcName), Collector::new);
+        collector.durations.record(gcInfo.getDuration() * 1_000_000L);
+        collector.causes.computeIfAbsent(cause, c -> new LongAdder()).increment();
+
+        long youngBefore = 0;
+        long youngAfter = 0;
+        long oldBefore = 0;
+        long oldAfter = 0;
+        for (Map.Entry<String, MemoryUsage> pool : gcInfo.getMemoryUsageBeforeGc().entrySet()) {
+            MemoryUsage after = gcInfo.getMemoryUsageAfterGc().get(pool.getKey());
+            if (after == null) {
+                continue;
+            }
+            String generation = GcNames.getByMemoryPoolName(pool.getKey(), null);
+            if (GcNames.YOUNG.equals(generation) || GcNames.SURVIVOR.equals(generation)) {
+                youngBefore += pool.getValue().getUsed();
+                youngAfter += after.getUsed();
+            } else if (GcNames.OLD.equals(generation)) {
+                oldBefore += pool.getValue().getUsed();
+                oldAfter += after.getUsed();
+            }
+        }
+
+        // everything in the young generation since the last collection has been allocated in the meantime
+        if (this.youngUsedAfterLastGc >= 0 && youngBefore > this.youngUsedAfterLastGc) {
+            this.allocatedBytes.add(youngBefore - this.youngUsedAfterLastGc);
+        }
+        this.youngUsedAfterLastGc = youngAfter;
+        // the old generation only grows by promotion while the young generation is collected
+        if (youngAfter < youngBefore && oldAfter > oldBefore) {
+            this.promotedBytes.add(oldAfter - oldBefore);
+        }
+    }
+
+    public Map<String, Collector> getCollectors() {
+        return this.collectors;
+    }
+
+    /**
+     * Bytes allocated in the young generation since the plugin started, as of the last collection.
+     */
+    public long getAllocatedBytes() {
+        return this.allocatedBytes.sum();
+    }
+
+    /**
+     * Bytes promoted to the old generation since the plugin started.
+     */
+    public long getPromotedBytes() {
+        return this.promotedBytes.sum();
+    }
+
+    /**
+     * The allocation and promotion rates since the previous call.
+     */
+    public synchronized Rates nextRates() {
+        long now = System.nanoTime();
+        double elapsedSeconds = Math.max(1, now - this.reportedAtNanos) / 1_000_000_000.0;
+        long allocated = this.getAllocatedBytes();
+        long promoted = this.getPromotedBytes();
+        Rates rates = new Rates(
+                (allocated - this.reportedAllocatedBytes) / elapsedSeconds,
+                (promoted - this.reportedPromotedBytes) / elapsedSeconds
+        );
+        this.reportedAllocatedBytes = allocated;
+        this.reportedPromotedBytes = promoted;
+        this.reportedAtNanos = now;
+        return rates;
+    }
+
+    public static class Rates {
+
+        private final double allocationRate;
+        private final double promotionRate;
+
+        Rates(double allocationRate, double promotionRate) {
+            this.allocationRate = allocationRate;
+            this.promotionRate = promotionRate;
+        }
+
+        public double getAllocationRate() {
+            return this.allocationRate;
+        }
+
+        public double getPromotionRate() {
+            return this.promotionRate;
+        }
+    }
+
+    /**
+     * The collections of one garbage collector.
+     */
+    public static class Collector {
+
+        private final String name;
+        private final StatsdLatencyHistogram durations = new StatsdLatencyHistogram(1);
+        private final ConcurrentMap<String, LongAdder> causes = new ConcurrentHashMap<>();
+
+        Collector(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public StatsdLatencyHistogram getDurations() {
+            return this.durations;
+        }
+
+        /**
+         * The number of collections by cause since the plugin started.
+         */
+        public Map<String, LongAdder> getCauses() {
+            return this.causes;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.automattic.elasticsearch.statsd;
+
+import org.elasticsearch.common.settings.Settings;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Rolls indices up into named groups by regular expressions on their names, e.g. {@code logs-\d{4}\.\d{2}\.\d{2}}
+ * into {@code logs}, so time based indices are reported as one stable series. An index belongs to the first group, in
+ * the order of the group names, whose expression matches its entire name. Group lookups are cached per index until
+ * the index is evicted.
+ */
+public class StatsdIndexGroups {
+
+    private static final String NO_GROUP = "";
+
+    private final String[] names;
+    private final Pattern[] patterns;
+    private final ConcurrentMap<String, String> groups = new ConcurrentHashMap<>();
+
+    /**
+     * @param rules the regular expressions by group name, tried in the order of the group names
+     */
+    public StatsdIndexGroups(Map<String, String> rules) {
+        this.names = new String[rules.size()];
+        this.patterns = new Pattern[rules.size()];
+        int i = 0;
+        for (Map.Entry<String, String> rule : new TreeMap<>(rules).entrySet()) {
+            this.names[i] = rule.getKey();
+            this.patterns[i] = compile(rule.getKey(), rule.getValue());
+            i++;
+        }
+    }
+
+    /**
+     * @return null if no groups are configured
+     */
+    public static StatsdIndexGroups build(Settings rules) {
+        if (rules.isEmpty()) {
+            return null;
+        }
+        return new StatsdIndexGroups(rules.getAsMap());
+    }
+
+    /**
+     * Fails on the first regular expression that does not compile.
+     */
+    public static void validate(Settings rules) {
+        for (Map.Entry<String, String> rule : rules.getAsMap().entrySet()) {
+            compile(rule.getKey(), rule.getValue());
+        }
+    }
+
+    /**
+     * @return the name of the group of the given index, or null if it is not part of any group
+     */
+    public String groupOf(String index) {
+        String group = this.groups.get(index);
+        if (group == null) {
+            group = this.groups.computeIfAbsent(index, this::match);
+        }
+        return group == NO_GROUP ? null : group;
+    }
+
+    public void evictIndex(String index) {
+        this.groups.remove(index);
+    }
+
+    private String match(String index) {
+        for (int i = 0; i < this.patterns.length; i++) {
+            if (this.patterns[i].matcher(index).matches()) {
+                return this.names[i];
+            }
+        }
+        return NO_GROUP;
+    }
+
+    private static Pattern compile(String name, String regex) {
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regular expression [" + regex + "] for index group [" + name + "]", e);
+        }
+    }
+}
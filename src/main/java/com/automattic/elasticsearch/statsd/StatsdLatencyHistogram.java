@@ -0,0 +1,53 @@
+package com.automattic.elasticsearch.statsd;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Records operation latencies on the search and indexing hot path into HDR histograms with two significant digits.
+ * Writers are wait-free and spread across {@code stripes} recorders by thread, so threads recording the same
+ * operation do not contend on the same counters. Every call to {@link #intervalHistogram()} returns the latencies
+ * recorded since the previous call, recycling the histograms of the previous interval instead of allocating.
+ *
+ * Values are recorded in microseconds and the histograms grow with the range of recorded values only.
+ */
+public class StatsdLatencyHistogram {
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final Recorder[] recorders;
+    private final Histogram[] recycled;
+    private final Histogram interval = new Histogram(SIGNIFICANT_DIGITS);
+    private final int mask;
+
+    /**
+     * @param stripes number of recorders, rounded up to a power of two
+     */
+    public StatsdLatencyHistogram(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes) * 2 - 1);
+        this.recorders = new Recorder[size];
+        this.recycled = new Histogram[size];
+        for (int i = 0; i < size; i++) {
+            this.recorders[i] = new Recorder(SIGNIFICANT_DIGITS);
+        }
+        this.mask = size - 1;
+    }
+
+    public void record(long tookInNanos) {
+        long micros = tookInNanos / 1000;
+        int stripe = (int) Thread.currentThread().getId() & this.mask;
+        this.recorders[stripe].recordValue(micros < 0 ? 0 : micros);
+    }
+
+    /**
+     * The latencies in microseconds recorded since the last call. The histogram is reused by the next call.
+     */
+    public synchronized Histogram intervalHistogram() {
+        this.interval.reset();
+        for (int i = 0; i < this.recorders.length; i++) {
+            this.recycled[i] = this.recorders[i].getIntervalHistogram(this.recycled[i]);
+            this.interval.add(this.recycled[i]);
+        }
+        return this.interval;
+    }
+}
@@ -0,0 +1,134 @@
+package com.automattic.elasticsearch.statsd;
+
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the parts of a StatsD line straight into a {@link ByteBuffer} without creating intermediate Strings.
+ * All methods throw {@link BufferOverflowException} when the buffer has no room left.
+ */
+public final class StatsdLineEncoder {
+
+    private static final int DOUBLE_FRACTION_DIGITS = 6;
+    private static final long DOUBLE_SCALE = 1_000_000L;
+    private static final double MAX_SCALED_DOUBLE = Long.MAX_VALUE / DOUBLE_SCALE;
+    // 2^63, the first double above the long range
+    private static final double MAX_LONG_DOUBLE = 0x1p63;
+    private static final byte[] LONG_MIN_VALUE = {
+            '-', '9', '2', '2', '3', '3', '7', '2', '0', '3', '6', '8', '5', '4', '7', '7', '5', '8', '0', '8'
+    };
+
+    private StatsdLineEncoder() {
+    }
+
+    /**
+     * Writes the UTF-8 encoding of the given characters, with a fast path for plain ASCII.
+     */
+    public static void putChars(ByteBuffer buffer, CharSequence chars) {
+        for (int i = 0, length = chars.length(); i < length; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Writes the decimal representation of the given value.
+     */
+    public static void putLong(ByteBuffer buffer, long value) {
+        if (value == Long.MIN_VALUE) {
+            buffer.put(LONG_MIN_VALUE);
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        putDigits(buffer, value, digitCount(value));
+    }
+
+    /**
+     * Writes the given value with at most six fraction digits and without trailing zeros. Callers have to make sure
+     * the value is finite, StatsD has no representation for NaN or infinity.
+     */
+    public static void putDouble(ByteBuffer buffer, double value) {
+        if (Math.abs(value) >= MAX_SCALED_DOUBLE) {
+            if (Math.abs(value) < MAX_LONG_DOUBLE) {
+                putLong(buffer, Math.round(value));
+            } else {
+                // rare enough to not be worth a garbage free path, and Math.round would clamp it
+                putAscii(buffer, BigDecimal.valueOf(value).toPlainString());
+            }
+            return;
+        }
+
+        long scaled = Math.round(value * DOUBLE_SCALE);
+        if (scaled < 0) {
+            buffer.put((byte) '-');
+            scaled = -scaled;
+        }
+
+        long integral = scaled / DOUBLE_SCALE;
+        putDigits(buffer, integral, digitCount(integral));
+
+        long fraction = scaled % DOUBLE_SCALE;
+        if (fraction != 0) {
+            int digits = DOUBLE_FRACTION_DIGITS;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            buffer.put((byte) '.');
+            putDigits(buffer, fraction, digits);
+        }
+    }
+
+    private static void putAscii(ByteBuffer buffer, String value) {
+        if (value.length() > buffer.remaining()) {
+            throw new BufferOverflowException();
+        }
+        for (int i = 0; i < value.length(); i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    /**
+     * Writes the given non-negative value using exactly {@code digits} digits, padding with leading zeros.
+     */
+    private static void putDigits(ByteBuffer buffer, long value, int digits) {
+        if (digits > buffer.remaining()) {
+            throw new BufferOverflowException();
+        }
+        int start = buffer.position();
+        for (int i = start + digits - 1; i >= start; i--) {
+            buffer.put(i, (byte) ('0' + (value % 10)));
+            value /= 10;
+        }
+        buffer.position(start + digits);
+    }
+
+    private static int digitCount(long value) {
+        int digits = 1;
+        for (long limit = 10; digits < 19 && value >= limit; limit *= 10) {
+            digits++;
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,53 @@
+package com.automattic.elasticsearch.statsd;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps the last packets in memory instead of sending them, for tests and benchmarks.
+ */
+public class StatsdMemoryTransport implements StatsdTransport {
+
+    public static final int DEFAULT_MAX_PACKETS = 1024;
+
+    private final int maxPackets;
+    private final Deque<byte[]> packets = new ArrayDeque<>();
+
+    public StatsdMemoryTransport() {
+        this(DEFAULT_MAX_PACKETS);
+    }
+
+    public StatsdMemoryTransport(int maxPackets) {
+        this.maxPackets = maxPackets;
+    }
+
+    @Override
+    public synchronized void send(ByteBuffer packet) {
+        byte[] bytes = new byte[packet.remaining()];
+        packet.get(bytes);
+        if (this.packets.size() == this.maxPackets) {
+            this.packets.removeFirst();
+        }
+        this.packets.addLast(bytes);
+    }
+
+    /**
+     * Returns and removes the packets kept so far.
+     */
+    public synchronized List<String> drain() {
+        List<String> drained = new ArrayList<>(this.packets.size());
+        for (byte[] packet : this.packets) {
+            drained.add(new String(packet, StandardCharsets.UTF_8));
+        }
+        this.packets.clear();
+        return drained;
+    }
+
+    @Override
+    public void close() {
+    }
+}
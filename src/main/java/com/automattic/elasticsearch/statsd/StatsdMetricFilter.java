@@ -0,0 +1,101 @@
+package com.automattic.elasticsearch.statsd;
+
+import org.apache.lucene.util.automaton.Automata;
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.ByteRunAutomaton;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+import org.apache.lucene.util.automaton.Operations;
+import org.elasticsearch.common.regex.Regex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Decides which metrics are reported from include / exclude patterns with {@code *} wildcards. The patterns are
+ * compiled once into a single automaton which is walked along the encoded metric name, so the state after a scope
+ * ({@code index}, {@code node.jvm}) is computed once per scope and a rejected group of stats such as {@code warmer} is
+ * recognized after a few steps, before any of its values are read or encoded.
+ *
+ * Metric patterns are matched against the name without the prefix, node name, index name and shard id, e.g.
+ * {@code node.jvm.mem.heap_used_in_bytes}, {@code node.thread_pool.search.rejected} or
+ * {@code index.search.query_total}. Index patterns are matched against the index name and apply to the index, shard
+ * and primary shard scopes.
+ */
+public class StatsdMetricFilter {
+
+    /**
+     * Returned by {@link #start(String)} and {@link #step(int, int)} once no metric can be accepted anymore
+     */
+    static final int REJECTED = -1;
+
+    private final ByteRunAutomaton metrics;
+    private final CharacterRunAutomaton indices;
+
+    public StatsdMetricFilter(List<String> include, List<String> exclude, List<String> includeIndices, List<String> excludeIndices) {
+        // without dead states every state the automaton can step into still leads to an accepted name
+        this.metrics = new ByteRunAutomaton(Operations.removeDeadStates(compile(include, exclude)));
+        this.indices = new CharacterRunAutomaton(compile(includeIndices, excludeIndices));
+    }
+
+    /**
+     * @return null if all metrics of all indices are reported
+     */
+    public static StatsdMetricFilter build(List<String> include, List<String> exclude, List<String> includeIndices, List<String> excludeIndices) {
+        if (include.isEmpty() && exclude.isEmpty() && includeIndices.isEmpty() && excludeIndices.isEmpty()) {
+            return null;
+        }
+        return new StatsdMetricFilter(include, exclude, includeIndices, excludeIndices);
+    }
+
+    public boolean acceptsIndex(String index) {
+        return this.indices.run(index);
+    }
+
+    /**
+     * The state after the given scope and the separator following it.
+     */
+    int start(String scope) {
+        int state = this.step(0, scope);
+        return this.step(state, '.');
+    }
+
+    int step(int state, String part) {
+        byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length && state != REJECTED; i++) {
+            state = this.step(state, bytes[i]);
+        }
+        return state;
+    }
+
+    int step(int state, byte[] bytes) {
+        for (int i = 0; i < bytes.length && state != REJECTED; i++) {
+            state = this.step(state, bytes[i]);
+        }
+        return state;
+    }
+
+    int step(int state, int b) {
+        if (state == REJECTED) {
+            return REJECTED;
+        }
+        return this.metrics.step(state, b & 0xff);
+    }
+
+    boolean isAccept(int state) {
+        return state != REJECTED && this.metrics.isAccept(state);
+    }
+
+    private static Automaton compile(List<String> include, List<String> exclude) {
+        Automaton included = include.isEmpty()
+                ? Automata.makeAnyString()
+                : Regex.simpleMatchToAutomaton(include.toArray(new String[include.size()]));
+        if (exclude.isEmpty()) {
+            return included;
+        }
+        return Operations.minus(
+                included,
+                Regex.simpleMatchToAutomaton(exclude.toArray(new String[exclude.size()])),
+                Operations.DEFAULT_MAX_DETERMINIZED_STATES
+        );
+    }
+}
@@ -0,0 +1,360 @@
+package com.automattic.elasticsearch.statsd;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the encoded metric names of the index, shard and node level stats around between reporting cycles, so the
+ * steady-state reporting path does not have to build or sanitize names anymore.
+ *
+ * A metric name is the concatenation of a cached scope ({@code index.INDEX_NAME.SHARD_ID}) and a cached stat key
+ * ({@code docs.count}), so memory grows with indices and shards plus stat keys rather than their product. Entries
+ * of deleted indices, including the node scopes of the {@link #INDEX_DIMENSION}, have to be removed with
+ * {@link #evictIndex(String)}.
+ *
+ * In the {@link Format#DOGSTATSD} format the index, shard, node and other dimensions are moved out of the name into
+ * pre-encoded tags, e.g. {@code shard} tagged {@code index:INDEX_NAME,shard:SHARD_ID}, which keeps the number of
+ * distinct metric names small and fixed.
+ */
+public class StatsdMetricNameCache {
+
+    public enum Format {
+        /**
+         * Every dimension is part of the metric name
+         */
+        PLAIN,
+        /**
+         * Dimensions are sent as DogStatsD tags
+         */
+        DOGSTATSD;
+
+        public static Format parse(String format) {
+            try {
+                return Format.valueOf(format.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown format [" + format + "], expected one of [plain, dogstatsd]");
+            }
+        }
+    }
+
+    /**
+     * Dimension of node scopes per index, e.g. the latencies per index and node, which are evicted with the index.
+     */
+    public static final String INDEX_DIMENSION = "index";
+
+    private static final String NO_DIMENSION = "";
+
+    private final Format format;
+    private final StatsdMetricFilter filter;
+    private final StatsdMetricScope indicesScope;
+    private final ConcurrentMap<String, IndexEntry> indices = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, StatsdMetricScope> indexGroups = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, byte[]>> statKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, StatsdMetricScope>> nodeScopes = new ConcurrentHashMap<>();
+    private final Set<String> indexFamilies = ConcurrentHashMap.newKeySet();
+
+    public StatsdMetricNameCache() {
+        this(Format.PLAIN);
+    }
+
+    public StatsdMetricNameCache(Format format) {
+        this(format, null);
+    }
+
+    /**
+     * @param filter null if every metric is reported
+     */
+    public StatsdMetricNameCache(Format format, StatsdMetricFilter filter) {
+        this.format = format;
+        this.filter = filter;
+        this.indicesScope = new StatsdMetricScope("indices", null, filter, "indices", true);
+    }
+
+    public Format getFormat() {
+        return this.format;
+    }
+
+    /**
+     * Scope of the stats summed across the entire cluster.
+     */
+    public StatsdMetricScope indicesScope() {
+        return this.indicesScope;
+    }
+
+    /**
+     * Scope of the stats summed per index across all shards.
+     */
+    public StatsdMetricScope indexScope(String index) {
+        return this.indexEntry(index).total;
+    }
+
+    /**
+     * Scope of the stats summed across all indices of an index group.
+     */
+    public StatsdMetricScope indexGroupScope(String group) {
+        StatsdMetricScope scope = this.indexGroups.get(group);
+        if (scope == null) {
+            scope = this.indexGroups.computeIfAbsent(group, g -> this.format == Format.DOGSTATSD
+                    ? new StatsdMetricScope("index_group", StatsdMetricScope.tag("index_group", g), this.filter, "index_group", true)
+                    : new StatsdMetricScope("index_group." + g + ".total", null, this.filter, "index_group", true)
+            );
+        }
+        return scope;
+    }
+
+    /**
+     * Whether the stats of the given index may be reported at all, without creating its scopes.
+     */
+    public boolean reportsIndex(String index) {
+        IndexEntry entry = this.indices.get(index);
+        if (entry != null) {
+            return entry.accepted;
+        }
+        return this.filter == null || this.filter.acceptsIndex(index);
+    }
+
+    /**
+     * Scope of the stats of a single shard.
+     */
+    public StatsdMetricScope shardScope(String index, int shardId) {
+        return this.indexEntry(index).shard(shardId);
+    }
+
+    /**
+     * Scope of the stats of the primary copy of a single shard.
+     */
+    public StatsdMetricScope primaryScope(String index, int shardId) {
+        return this.indexEntry(index).primary(shardId);
+    }
+
+    /**
+     * Scope of the stats of a replica copy of a single shard held by the given node. Replicas of the same shard are
+     * held by different nodes, so the node is part of the scope. The node name must not change over the lifetime of
+     * the cache.
+     */
+    public StatsdMetricScope replicaScope(String index, int shardId, String nodeName) {
+        return this.indexEntry(index).replica(shardId, nodeName);
+    }
+
+    /**
+     * Scope of a family of node level stats, e.g. {@code jvm}. The node name must not change over the lifetime of
+     * the cache.
+     */
+    public StatsdMetricScope nodeScope(String nodeName, String family) {
+        ConcurrentMap<String, StatsdMetricScope> familyScopes = this.nodeFamilyScopes(family);
+        StatsdMetricScope scope = familyScopes.get(NO_DIMENSION);
+        if (scope == null) {
+            scope = familyScopes.computeIfAbsent(NO_DIMENSION, d -> this.newNodeScope(nodeName, family, null));
+        }
+        return scope;
+    }
+
+    /**
+     * Scope of a single member of a family of node level stats, e.g. the {@code jvm.gc.collectors} member
+     * {@code collector:young}. The node name must not change over the lifetime of the cache.
+     */
+    public StatsdMetricScope nodeScope(String nodeName, String family, String dimension, String value) {
+        ConcurrentMap<String, StatsdMetricScope> familyScopes = this.nodeFamilyScopes(family);
+        StatsdMetricScope scope = familyScopes.get(value);
+        if (scope == null) {
+            if (INDEX_DIMENSION.equals(dimension)) {
+                this.indexFamilies.add(family);
+            }
+            scope = familyScopes.computeIfAbsent(value, v -> this.newNodeScope(
+                    nodeName,
+                    family,
+                    new String[]{dimension, value}
+            ));
+        }
+        return scope;
+    }
+
+    /**
+     * Scope of a single member of a family of node level stats with two dimensions, either value may be null. The
+     * node name must not change over the lifetime of the cache.
+     */
+    public StatsdMetricScope nodeScope(String nodeName, String family, String dimension, String value,
+                                       String otherDimension, String otherValue) {
+        ConcurrentMap<String, StatsdMetricScope> familyScopes = this.nodeFamilyScopes(family);
+        String key = value + '\0' + otherValue;
+        StatsdMetricScope scope = familyScopes.get(key);
+        if (scope == null) {
+            scope = familyScopes.computeIfAbsent(key, k -> this.newNodeScope(
+                    nodeName,
+                    family,
+                    new String[]{dimension, value, otherDimension, otherValue}
+            ));
+        }
+        return scope;
+    }
+
+    /**
+     * Encoded {@code group.valueName} key of a single stat, {@code group} may be null.
+     */
+    public byte[] statKey(String group, String valueName) {
+        ConcurrentMap<String, byte[]> groupKeys = this.statKeys.get(group == null ? NO_DIMENSION : group);
+        if (groupKeys == null) {
+            groupKeys = this.statKeys.computeIfAbsent(group == null ? NO_DIMENSION : group, g -> new ConcurrentHashMap<>());
+        }
+        byte[] statKey = groupKeys.get(valueName);
+        if (statKey == null) {
+            statKey = groupKeys.computeIfAbsent(
+                    valueName,
+                    v -> StatsdReporter.sanitize(group == null ? v : group + "." + v).getBytes(StandardCharsets.UTF_8)
+            );
+        }
+        return statKey;
+    }
+
+    public void evictIndex(String index) {
+        this.indices.remove(index);
+        for (String family : this.indexFamilies) {
+            this.nodeFamilyScopes(family).remove(index);
+        }
+    }
+
+    private IndexEntry indexEntry(String index) {
+        IndexEntry entry = this.indices.get(index);
+        if (entry == null) {
+            entry = this.indices.computeIfAbsent(index, i -> new IndexEntry(this.format, this.filter, i));
+        }
+        return entry;
+    }
+
+    private ConcurrentMap<String, StatsdMetricScope> nodeFamilyScopes(String family) {
+        ConcurrentMap<String, StatsdMetricScope> familyScopes = this.nodeScopes.get(family);
+        if (familyScopes == null) {
+            familyScopes = this.nodeScopes.computeIfAbsent(family, f -> new ConcurrentHashMap<>());
+        }
+        return familyScopes;
+    }
+
+    /**
+     * @param dimensions pairs of dimension names and values, null values are skipped
+     */
+    private StatsdMetricScope newNodeScope(String nodeName, String family, String[] dimensions) {
+        StringBuilder filterName = new StringBuilder("node.").append(family);
+        for (int i = 0; dimensions != null && i < dimensions.length; i += 2) {
+            if (dimensions[i + 1] != null) {
+                filterName.append('.').append(dimensions[i + 1]);
+            }
+        }
+
+        if (this.format == Format.DOGSTATSD) {
+            StringBuilder tags = new StringBuilder(StatsdMetricScope.tag("node", nodeName));
+            for (int i = 0; dimensions != null && i < dimensions.length; i += 2) {
+                if (dimensions[i + 1] != null) {
+                    tags.append(',').append(StatsdMetricScope.tag(dimensions[i], dimensions[i + 1]));
+                }
+            }
+            return new StatsdMetricScope("node." + family, tags.toString(), this.filter, filterName.toString(), true);
+        }
+
+        StringBuilder name = new StringBuilder("node.").append(nodeName).append('.').append(family);
+        for (int i = 0; dimensions != null && i < dimensions.length; i += 2) {
+            if (dimensions[i + 1] != null) {
+                name.append('.').append(dimensions[i + 1]);
+            }
+        }
+        return new StatsdMetricScope(name.toString(), null, this.filter, filterName.toString(), true);
+    }
+
+    private static class IndexEntry {
+
+        private final Format format;
+        private final StatsdMetricFilter filter;
+        private final boolean accepted;
+        private final String index;
+        private final StatsdMetricScope total;
+        private volatile StatsdMetricScope[] shards = new StatsdMetricScope[0];
+        private volatile StatsdMetricScope[] primaries = new StatsdMetricScope[0];
+        private volatile StatsdMetricScope[] replicas = new StatsdMetricScope[0];
+
+        IndexEntry(Format format, StatsdMetricFilter filter, String index) {
+            this.format = format;
+            this.filter = filter;
+            this.accepted = filter == null || filter.acceptsIndex(index);
+            this.index = index;
+            this.total = format == Format.DOGSTATSD
+                    ? this.newScope("index", StatsdMetricScope.tag("index", index), "index")
+                    : this.newScope("index." + index + ".total", null, "index");
+        }
+
+        StatsdMetricScope shard(int shardId) {
+            StatsdMetricScope[] shards = this.shards;
+            if (shardId < shards.length && shards[shardId] != null) {
+                return shards[shardId];
+            }
+            return this.createShard(shardId);
+        }
+
+        StatsdMetricScope primary(int shardId) {
+            StatsdMetricScope[] primaries = this.primaries;
+            if (shardId < primaries.length && primaries[shardId] != null) {
+                return primaries[shardId];
+            }
+            return this.createPrimary(shardId);
+        }
+
+        StatsdMetricScope replica(int shardId, String nodeName) {
+            StatsdMetricScope[] replicas = this.replicas;
+            if (shardId < replicas.length && replicas[shardId] != null) {
+                return replicas[shardId];
+            }
+            return this.createReplica(shardId, nodeName);
+        }
+
+        private synchronized StatsdMetricScope createShard(int shardId) {
+            StatsdMetricScope[] shards = grow(this.shards, shardId);
+            if (shards[shardId] == null) {
+                shards[shardId] = this.format == Format.DOGSTATSD
+                        ? this.newScope("shard", this.shardTags(shardId), "shard")
+                        : this.newScope("index." + this.index + "." + shardId, null, "shard");
+                this.shards = shards;
+            }
+            return shards[shardId];
+        }
+
+        private synchronized StatsdMetricScope createPrimary(int shardId) {
+            StatsdMetricScope[] primaries = grow(this.primaries, shardId);
+            if (primaries[shardId] == null) {
+                primaries[shardId] = this.format == Format.DOGSTATSD
+                        ? this.newScope("primary_shard", this.shardTags(shardId), "primary_shard")
+                        : this.newScope("index." + this.index + ".primaries." + shardId, null, "primary_shard");
+                this.primaries = primaries;
+            }
+            return primaries[shardId];
+        }
+
+        private synchronized StatsdMetricScope createReplica(int shardId, String nodeName) {
+            StatsdMetricScope[] replicas = grow(this.replicas, shardId);
+            if (replicas[shardId] == null) {
+                replicas[shardId] = this.format == Format.DOGSTATSD
+                        ? this.newScope("replica_shard", this.shardTags(shardId) + "," + StatsdMetricScope.tag("node", nodeName), "replica_shard")
+                        : this.newScope("index." + this.index + ".replicas." + shardId + "." + nodeName, null, "replica_shard");
+                this.replicas = replicas;
+            }
+            return replicas[shardId];
+        }
+
+        private StatsdMetricScope newScope(String name, String tags, String filterName) {
+            return new StatsdMetricScope(name, tags, this.filter, filterName, this.accepted);
+        }
+
+        private String shardTags(int shardId) {
+            return StatsdMetricScope.tag("index", this.index) + "," + StatsdMetricScope.tag("shard", Integer.toString(shardId));
+        }
+
+        private static StatsdMetricScope[] grow(StatsdMetricScope[] scopes, int shardId) {
+            if (shardId < scopes.length) {
+                return scopes;
+            }
+            StatsdMetricScope[] grown = new StatsdMetricScope[shardId + 1];
+            System.arraycopy(scopes, 0, grown, 0, scopes.length);
+            return grown;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.automattic.elasticsearch.statsd;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The sanitized and encoded name a group of metrics is reported under, e.g. {@code index.INDEX_NAME.total}, and its
+ * pre-encoded DogStatsD tags, e.g. {@code |#index:INDEX_NAME}, if any. Scopes built by the
+ * {@link StatsdMetricNameCache} also keep the state of the {@link StatsdMetricFilter} after their name, so the
+ * reporters can check whether a metric is reported before reading or encoding it.
+ */
+public final class StatsdMetricScope {
+
+    private static final byte[] NO_TAGS = new byte[0];
+
+    private final byte[] name;
+    private final byte[] tags;
+    private final StatsdMetricFilter filter;
+    private final int filterState;
+
+    public StatsdMetricScope(String name) {
+        this(name, null);
+    }
+
+    /**
+     * @param tags comma separated {@code key:value} pairs built with {@link #tag(String, String)}, or null
+     */
+    public StatsdMetricScope(String name, String tags) {
+        this(name, tags, null, null, true);
+    }
+
+    /**
+     * @param filter     null if every metric is reported
+     * @param filterName the name the filter patterns are matched against, e.g. {@code node.jvm}
+     * @param accepted   false if the entire scope is rejected, e.g. because of its index name
+     */
+    StatsdMetricScope(String name, String tags, StatsdMetricFilter filter, String filterName, boolean accepted) {
+        this.name = StatsdReporter.sanitize(name).getBytes(StandardCharsets.UTF_8);
+        this.tags = (tags == null || tags.isEmpty()) ? NO_TAGS : ("|#" + tags).getBytes(StandardCharsets.UTF_8);
+        this.filter = filter;
+        if (!accepted) {
+            this.filterState = StatsdMetricFilter.REJECTED;
+        } else {
+            this.filterState = filter == null ? 0 : filter.start(StatsdReporter.sanitize(filterName));
+        }
+    }
+
+    /**
+     * Whether any metric of this scope may be reported.
+     */
+    public boolean reports() {
+        return this.filterState != StatsdMetricFilter.REJECTED;
+    }
+
+    /**
+     * Whether any metric of the given group, e.g. {@code search}, may be reported.
+     */
+    public boolean reports(String group) {
+        if (this.filter == null || this.filterState == StatsdMetricFilter.REJECTED) {
+            return this.reports();
+        }
+        return this.filter.step(this.filter.step(this.filterState, group), '.') != StatsdMetricFilter.REJECTED;
+    }
+
+    /**
+     * Whether the metric with the given stat key is reported.
+     */
+    public boolean reports(byte[] statKey) {
+        if (this.filter == null || this.filterState == StatsdMetricFilter.REJECTED) {
+            return this.reports();
+        }
+        return this.filter.isAccept(this.filter.step(this.filterState, statKey));
+    }
+
+    /**
+     * A single {@code key:value} tag, with the characters separating tags and fields in a line replaced.
+     */
+    public static String tag(String key, String value) {
+        return key + ":" + sanitizeTagValue(value);
+    }
+
+    private static String sanitizeTagValue(String value) {
+        StringBuilder sanitized = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case ',':
+                case '|':
+                case '#':
+                case ' ':
+                case '\n':
+                    sanitized.append('_');
+                    break;
+                default:
+                    sanitized.append(c);
+            }
+        }
+        return sanitized.toString();
+    }
+
+    byte[] getName() {
+        return this.name;
+    }
+
+    byte[] getTags() {
+        return this.tags;
+    }
+}
@@ -0,0 +1,148 @@
+package com.automattic.elasticsearch.statsd;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+
+/**
+ * Metrics registered by other node components, e.g. plugins or scripts, which are sent with the node stats on every
+ * cycle through the same batching client instead of their own. The registry is bound by the plugin, so components
+ * created by Guice can inject it.
+ *
+ * Registration and updates never lock: counters are {@link LongAdder}s, timers are striped latency histograms and
+ * gauges are only read by the reporter. Registering a name again returns the existing metric, registering it with
+ * another type fails. Metrics are reported below {@code node.{NODE_NAME}.custom}, so names must not contain the
+ * characters of the StatsD line protocol, which would break the whole packet they are batched into.
+ */
+public class StatsdMetricsRegistry {
+
+    private static final int TIMER_STRIPES = Math.min(8, Runtime.getRuntime().availableProcessors());
+
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * A counter of the given name, sent as a cumulative total like the counters of the node stats.
+     */
+    public Counter counter(String name) {
+        return this.register(name, Counter.class, Counter::new);
+    }
+
+    /**
+     * A gauge of the given name, the supplier is called by the reporter on every cycle and must not block.
+     */
+    public Gauge gauge(String name, DoubleSupplier supplier) {
+        return this.register(name, Gauge.class, n -> new Gauge(n, supplier));
+    }
+
+    /**
+     * A timer of the given name, sent as the count and latency percentiles of the cycle.
+     */
+    public Timer timer(String name) {
+        return this.register(name, Timer.class, Timer::new);
+    }
+
+    public void remove(String name) {
+        this.metrics.remove(name);
+    }
+
+    Map<String, Metric> getMetrics() {
+        return this.metrics;
+    }
+
+    private <T extends Metric> T register(String name, Class<T> type, Function<String, T> factory) {
+        validateName(name);
+        Metric metric = this.metrics.get(name);
+        if (metric == null) {
+            metric = this.metrics.computeIfAbsent(name, factory);
+        }
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("metric [" + name + "] is already registered as a " + metric.getClass().getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    private static void validateName(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("metric name must not be empty");
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == ':' || c == '|' || c == '#' || c == '@' || Character.isISOControl(c)) {
+                throw new IllegalArgumentException("metric name [" + name + "] must not contain [:|#@] or control characters");
+            }
+        }
+    }
+
+    public abstract static class Metric {
+
+        private final String name;
+
+        Metric(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+    }
+
+    public static class Counter extends Metric {
+
+        private final LongAdder count = new LongAdder();
+
+        Counter(String name) {
+            super(name);
+        }
+
+        public void increment() {
+            this.count.increment();
+        }
+
+        public void add(long delta) {
+            this.count.add(delta);
+        }
+
+        public long getCount() {
+            return this.count.sum();
+        }
+    }
+
+    public static class Gauge extends Metric {
+
+        private final DoubleSupplier supplier;
+
+        Gauge(String name, DoubleSupplier supplier) {
+            super(name);
+            this.supplier = supplier;
+        }
+
+        public double getValue() {
+            return this.supplier.getAsDouble();
+        }
+    }
+
+    public static class Timer extends Metric {
+
+        private final StatsdLatencyHistogram latency = new StatsdLatencyHistogram(TIMER_STRIPES);
+
+        Timer(String name) {
+            super(name);
+        }
+
+        public void record(long duration, TimeUnit unit) {
+            this.latency.record(unit.toNanos(duration));
+        }
+
+        public void recordNanos(long tookInNanos) {
+            this.latency.record(tookInNanos);
+        }
+
+        StatsdLatencyHistogram getLatency() {
+            return this.latency;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.automattic.elasticsearch.statsd;
+
+import org.elasticsearch.action.admin.cluster.node.stats.NodeStats;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.discovery.DiscoveryStats;
+import org.elasticsearch.http.HttpStats;
+import org.elasticsearch.indices.breaker.AllCircuitBreakerStats;
+import org.elasticsearch.ingest.IngestStats;
+import org.elasticsearch.monitor.fs.FsInfo;
+import org.elasticsearch.monitor.jvm.JvmStats;
+import org.elasticsearch.monitor.os.OsStats;
+import org.elasticsearch.monitor.process.ProcessStats;
+import org.elasticsearch.threadpool.ThreadPoolStats;
+import org.elasticsearch.transport.TransportStats;
+
+import java.util.function.Supplier;
+
+/**
+ * Samples the node level stats straight from the services owning them instead of building a complete
+ * {@link NodeStats} snapshot every cycle. Every subsystem is only sampled when a reporter actually asks for it, and
+ * the expensive probes (file systems, OS and process, which stat every data path and read from {@code /proc}) are
+ * cached for {@code probeCache} so reporting more often does not probe more often. The cheap in-memory sources (JVM,
+ * thread pools, transport, HTTP, circuit breakers, ingest and discovery) are sampled fresh on every call.
+ */
+public class StatsdNodeStatsCollector {
+
+    private final Sample<FsInfo> fs;
+    private final Sample<JvmStats> jvm;
+    private final Sample<OsStats> os;
+    private final Sample<ProcessStats> process;
+    private final Sample<HttpStats> http;
+    private final Sample<TransportStats> transport;
+    private final Sample<ThreadPoolStats> threadPool;
+    private final Sample<AllCircuitBreakerStats> breakers;
+    private final Sample<IngestStats> ingest;
+    private final Sample<DiscoveryStats> discovery;
+
+    /**
+     * @param http null if HTTP stats are not reported
+     * @param breakers null if circuit breaker stats are not reported
+     * @param ingest null if ingest stats are not reported
+     * @param discovery null if discovery stats are not reported
+     */
+    public StatsdNodeStatsCollector(Supplier<FsInfo> fs, Supplier<JvmStats> jvm, Supplier<OsStats> os,
+                                    Supplier<ProcessStats> process, Supplier<HttpStats> http,
+                                    Supplier<TransportStats> transport, Supplier<ThreadPoolStats> threadPool,
+                                    Supplier<AllCircuitBreakerStats> breakers, Supplier<IngestStats> ingest,
+                                    Supplier<DiscoveryStats> discovery, TimeValue probeCache) {
+        this.fs = new Sample<>(fs, probeCache);
+        this.jvm = new Sample<>(jvm, TimeValue.ZERO);
+        this.os = new Sample<>(os, probeCache);
+        this.process = new Sample<>(process, probeCache);
+        this.http = new Sample<>(http, TimeValue.ZERO);
+        this.transport = new Sample<>(transport, TimeValue.ZERO);
+        this.threadPool = new Sample<>(threadPool, TimeValue.ZERO);
+        this.breakers = new Sample<>(breakers, TimeValue.ZERO);
+        this.ingest = new Sample<>(ingest, TimeValue.ZERO);
+        this.discovery = new Sample<>(discovery, TimeValue.ZERO);
+    }
+
+    /**
+     * Serves the stats of an existing snapshot, e.g. for tests and benchmarks.
+     */
+    public static StatsdNodeStatsCollector of(NodeStats nodeStats) {
+        return new StatsdNodeStatsCollector(
+                nodeStats::getFs,
+                nodeStats::getJvm,
+                nodeStats::getOs,
+                nodeStats::getProcess,
+                nodeStats::getHttp,
+                nodeStats::getTransport,
+                nodeStats::getThreadPool,
+                nodeStats::getBreaker,
+                nodeStats::getIngestStats,
+                nodeStats::getDiscoveryStats,
+                TimeValue.ZERO
+        );
+    }
+
+    public FsInfo fs() {
+        return this.fs.get();
+    }
+
+    public JvmStats jvm() {
+        return this.jvm.get();
+    }
+
+    public OsStats os() {
+        return this.os.get();
+    }
+
+    public ProcessStats process() {
+        return this.process.get();
+    }
+
+    public HttpStats http() {
+        return this.http.get();
+    }
+
+    public TransportStats transport() {
+        return this.transport.get();
+    }
+
+    public ThreadPoolStats threadPool() {
+        return this.threadPool.get();
+    }
+
+    public AllCircuitBreakerStats breakers() {
+        return this.breakers.get();
+    }
+
+    public IngestStats ingest() {
+        return this.ingest.get();
+    }
+
+    public DiscoveryStats discovery() {
+        return this.discovery.get();
+    }
+
+    /**
+     * The last value of a supplier, resampled once it is older than {@code maxAge}.
+     */
+    private static final class Sample<T> {
+
+        private final Supplier<T> supplier;
+        private final long maxAgeNanos;
+        private T value;
+        private long sampledAtNanos;
+
+        Sample(Supplier<T> supplier, TimeValue maxAge) {
+            this.supplier = supplier;
+            this.maxAgeNanos = maxAge.nanos();
+        }
+
+        synchronized T get() {
+            if (this.supplier == null) {
+                return null;
+            }
+            long now = System.nanoTime();
+            if (this.value == null || now - this.sampledAtNanos >= this.maxAgeNanos) {
+                this.value = this.supplier.get();
+                this.sampledAtNanos = now;
+            }
+            return this.value;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.automattic.elasticsearch.statsd;
+
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.IndexModule;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.shard.IndexEventListener;
+import org.elasticsearch.index.shard.IndexingOperationListener;
+import org.elasticsearch.index.shard.SearchOperationListener;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.cluster.IndicesClusterStateService;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects per operation stats of the shards allocated to the local node straight from the shard level operation
+ * listeners, which Elasticsearch does not keep itself: latency percentiles and the number of operations slower than
+ * configured thresholds. The stats are kept for the node and per index until the index is removed from the node,
+ * latencies per index only if enabled.
+ */
+public class StatsdOperationStats {
+
+    public enum Operation {
+        QUERY,
+        FETCH,
+        INDEX,
+        DELETE;
+
+        private final String statName = this.name().toLowerCase(Locale.ROOT);
+
+        public String getStatName() {
+            return this.statName;
+        }
+    }
+
+    private static final int NODE_STRIPES = Math.min(8, Runtime.getRuntime().availableProcessors());
+    private static final int INDEX_STRIPES = 1;
+
+    private final boolean latency;
+    private final boolean indexLatency;
+    private final SlowThresholds[] slowThresholds = new SlowThresholds[Operation.values().length];
+    private final boolean perIndex;
+    private final Stats node;
+    private final ConcurrentMap<String, Stats> indices = new ConcurrentHashMap<>();
+
+    /**
+     * @param latency whether latencies are recorded
+     * @param indexLatency whether latencies are recorded per index as well
+     * @param slowThresholds the thresholds operations are counted above, per operation
+     */
+    public StatsdOperationStats(boolean latency, boolean indexLatency, Map<Operation, List<TimeValue>> slowThresholds) {
+        this.latency = latency;
+        this.indexLatency = latency && indexLatency;
+        boolean slow = false;
+        for (Map.Entry<Operation, List<TimeValue>> thresholds : slowThresholds.entrySet()) {
+            if (!thresholds.getValue().isEmpty()) {
+                this.slowThresholds[thresholds.getKey().ordinal()] = new SlowThresholds(thresholds.getValue());
+                slow = true;
+            }
+        }
+        this.perIndex = this.indexLatency || slow;
+        this.node = new Stats(this.latency ? NODE_STRIPES : 0, this.slowThresholds);
+    }
+
+    /**
+     * The slow thresholds by operation from the query and bulk item thresholds.
+     */
+    public static Map<Operation, List<TimeValue>> slowThresholds(List<TimeValue> query, List<TimeValue> index) {
+        Map<Operation, List<TimeValue>> thresholds = new EnumMap<>(Operation.class);
+        thresholds.put(Operation.QUERY, query);
+        // bulk items are index and delete operations
+        thresholds.put(Operation.INDEX, index);
+        thresholds.put(Operation.DELETE, index);
+        return thresholds;
+    }
+
+    /**
+     * Whether any stats are recorded, the listeners are not needed otherwise.
+     */
+    public boolean isEnabled() {
+        return this.latency || this.perIndex;
+    }
+
+    /**
+     * The thresholds of the given operation, or null if it is not counted.
+     */
+    public SlowThresholds getSlowThresholds(Operation operation) {
+        return this.slowThresholds[operation.ordinal()];
+    }
+
+    /**
+     * Hooks the listeners into every index created on this node.
+     */
+    public void onIndexModule(IndexModule indexModule) {
+        String index = indexModule.getIndex().getName();
+        Stats indexStats = this.perIndex
+                ? this.indices.computeIfAbsent(index, i -> new Stats(this.indexLatency ? INDEX_STRIPES : 0, this.slowThresholds))
+                : null;
+        Listener listener = new Listener(this.node, indexStats);
+        indexModule.addIndexOperationListener(listener);
+        indexModule.addSearchOperationListener(listener);
+        indexModule.addIndexEventListener(new IndexEventListener() {
+            @Override
+            public void afterIndexRemoved(Index removed, IndexSettings indexSettings,
+                                          IndicesClusterStateService.AllocatedIndices.IndexRemovalReason reason) {
+                StatsdOperationStats.this.indices.remove(removed.getName(), indexStats);
+            }
+        });
+    }
+
+    public Stats getNodeStats() {
+        return this.node;
+    }
+
+    /**
+     * The stats per index, empty unless latencies per index or slow operations are recorded.
+     */
+    public Map<String, Stats> getIndexStats() {
+        return this.indices;
+    }
+
+    /**
+     * The ascending thresholds one operation is counted above, with their stat names.
+     */
+    public static class SlowThresholds {
+
+        private final long[] nanos;
+        private final String[] statNames;
+
+        SlowThresholds(List<TimeValue> thresholds) {
+            TimeValue[] sorted = thresholds.toArray(new TimeValue[thresholds.size()]);
+            Arrays.sort(sorted);
+            this.nanos = new long[sorted.length];
+            this.statNames = new String[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                this.nanos[i] = sorted[i].nanos();
+                this.statNames[i] = "slower_than_" + sorted[i].millis() + "ms";
+            }
+        }
+
+        public int size() {
+            return this.nanos.length;
+        }
+
+        public String getStatName(int threshold) {
+            return this.statNames[threshold];
+        }
+    }
+
+    /**
+     * The stats of all operations of the node or a single index.
+     */
+    public static class Stats {
+
+        private final StatsdLatencyHistogram[] latencies = new StatsdLatencyHistogram[Operation.values().length];
+        private final SlowThresholds[] slowThresholds;
+        private final LongAdder[][] slow = new LongAdder[Operation.values().length][];
+        private final long[][] slowTaken = new long[Operation.values().length][];
+
+        /**
+         * @param stripes number of latency recorders per operation, no latencies are recorded if 0
+         */
+        Stats(int stripes, SlowThresholds[] slowThresholds) {
+            this.slowThresholds = slowThresholds;
+            for (int i = 0; i < this.latencies.length; i++) {
+                if (stripes > 0) {
+                    this.latencies[i] = new StatsdLatencyHistogram(stripes);
+                }
+                if (slowThresholds[i] != null) {
+                    this.slow[i] = new LongAdder[slowThresholds[i].size()];
+                    this.slowTaken[i] = new long[slowThresholds[i].size()];
+                    for (int j = 0; j < this.slow[i].length; j++) {
+                        this.slow[i][j] = new LongAdder();
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return null if latencies are not recorded
+         */
+        public StatsdLatencyHistogram getLatency(Operation operation) {
+            return this.latencies[operation.ordinal()];
+        }
+
+        /**
+         * The number of operations slower than the given threshold of {@link StatsdOperationStats#getSlowThresholds(Operation)}.
+         */
+        public long getSlowCount(Operation operation, int threshold) {
+            return this.slow[operation.ordinal()][threshold].sum();
+        }
+
+        /**
+         * The number of operations slower than the given threshold since the previous call, so only a single reporter
+         * may take the slow counts. Unlike resetting the adders no concurrent operation is lost.
+         */
+        public synchronized long takeSlowCount(Operation operation, int threshold) {
+            long total = this.getSlowCount(operation, threshold);
+            long[] taken = this.slowTaken[operation.ordinal()];
+            long slow = total - taken[threshold];
+            taken[threshold] = total;
+            return slow;
+        }
+
+        /**
+         * Records one successful operation, as the listeners do.
+         */
+        public void onOperation(Operation operation, long tookInNanos) {
+            int i = operation.ordinal();
+            if (this.latencies[i] != null) {
+                this.latencies[i].record(tookInNanos);
+            }
+            LongAdder[] slow = this.slow[i];
+            if (slow != null) {
+                long[] thresholds = this.slowThresholds[i].nanos;
+                // an operation slower than a threshold is slower than all lower ones as well
+                for (int j = 0; j < thresholds.length && tookInNanos > thresholds[j]; j++) {
+                    slow[j].increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the operations of all shards of one index, on the threads executing them. Recoveries and failed
+     * operations are skipped.
+     */
+    private static class Listener implements IndexingOperationListener, SearchOperationListener {
+
+        private final Stats node;
+        private final Stats index;
+
+        Listener(Stats node, Stats index) {
+            this.node = node;
+            this.index = index;
+        }
+
+        @Override
+        public void onQueryPhase(SearchContext searchContext, long tookInNanos) {
+            this.onOperation(Operation.QUERY, tookInNanos);
+        }
+
+        @Override
+        public void onFetchPhase(SearchContext searchContext, long tookInNanos) {
+            this.onOperation(Operation.FETCH, tookInNanos);
+        }
+
+        @Override
+        public void postIndex(ShardId shardId, Engine.Index index, Engine.IndexResult result) {
+            if (!index.origin().isRecovery() && !result.hasFailure()) {
+                this.onOperation(Operation.INDEX, result.getTook());
+            }
+        }
+
+        @Override
+        public void postDelete(ShardId shardId, Engine.Delete delete, Engine.DeleteResult result) {
+            if (!delete.origin().isRecovery() && !result.hasFailure()) {
+                this.onOperation(Operation.DELETE, result.getTook());
+            }
+        }
+
+        private void onOperation(Operation operation, long tookInNanos) {
+            this.node.onOperation(operation, tookInNanos);
+            if (this.index != null) {
+                this.index.onOperation(operation, tookInNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.automattic.elasticsearch.statsd;
+
+import com.timgroup.statsd.StatsDClientErrorHandler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decouples the reporters from the socket: packets are copied into a bounded queue of at most {@code capacity}
+ * pre-allocated buffers and written to the underlying transport by a single sender thread. When the queue is full the
+ * packet is dropped and counted instead of blocking the reporter, so the plugin can report on its own losses.
+ *
+ * Unlike the other transports this one is thread safe and shared by the clients of all reporters.
+ */
+public class StatsdQueueingTransport implements StatsdTransport {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final long POLL_MILLIS = 100;
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+    private final StatsdTransport transport;
+    private final int capacity;
+    private final int maxPacketBytes;
+    private final StatsDClientErrorHandler handler;
+    private final BlockingQueue<Packet> queue;
+    private final BlockingQueue<Packet> free;
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final Thread sender;
+
+    private final LongAdder enqueuedMetrics = new LongAdder();
+    private final LongAdder sentMetrics = new LongAdder();
+    private final LongAdder droppedMetrics = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    private final LongAdder sentPackets = new LongAdder();
+    private final LongAdder sendErrors = new LongAdder();
+
+    private volatile boolean closed;
+
+    public StatsdQueueingTransport(StatsdTransport transport, int capacity, int maxPacketBytes,
+                                   ThreadFactory threadFactory, StatsDClientErrorHandler handler) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive but was " + capacity);
+        }
+        this.transport = transport;
+        this.capacity = capacity;
+        this.maxPacketBytes = maxPacketBytes;
+        this.handler = handler;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.free = new ArrayBlockingQueue<>(capacity);
+        this.sender = threadFactory.newThread(this::sendLoop);
+    }
+
+    public void start() {
+        this.sender.start();
+    }
+
+    @Override
+    public void send(ByteBuffer packet) {
+        this.send(packet, 1);
+    }
+
+    /**
+     * Queues a copy of the packet, or drops it if the queue is full or closed. Never blocks.
+     */
+    @Override
+    public void send(ByteBuffer packet, int lines) {
+        Packet queued = this.closed ? null : this.acquire();
+        if (queued == null || packet.remaining() > queued.buffer.capacity()) {
+            if (queued != null) {
+                this.free.offer(queued);
+            }
+            packet.position(packet.limit());
+            this.droppedMetrics.add(lines);
+            return;
+        }
+
+        queued.buffer.clear();
+        queued.buffer.put(packet);
+        queued.buffer.flip();
+        queued.lines = lines;
+        // cannot fail, there are never more packets than queue slots
+        this.queue.offer(queued);
+        this.enqueuedMetrics.add(lines);
+    }
+
+    /**
+     * Stops accepting packets, waits briefly for the sender thread to drain the queue and closes the underlying
+     * transport.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        try {
+            this.sender.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.sender.isAlive()) {
+            this.sender.interrupt();
+        }
+        this.transport.close();
+    }
+
+    public long getEnqueuedMetrics() {
+        return this.enqueuedMetrics.sum();
+    }
+
+    public long getSentMetrics() {
+        return this.sentMetrics.sum();
+    }
+
+    public long getDroppedMetrics() {
+        return this.droppedMetrics.sum();
+    }
+
+    public long getSentBytes() {
+        return this.sentBytes.sum();
+    }
+
+    public long getSentPackets() {
+        return this.sentPackets.sum();
+    }
+
+    public long getSendErrors() {
+        return this.sendErrors.sum();
+    }
+
+    /**
+     * Number of packets waiting for the sender thread.
+     */
+    public int getQueueSize() {
+        return this.queue.size();
+    }
+
+    private Packet acquire() {
+        Packet packet = this.free.poll();
+        if (packet != null) {
+            return packet;
+        }
+        // buffers are only allocated up to the capacity, after that a packet is only available once sent
+        while (true) {
+            int allocated = this.allocated.get();
+            if (allocated >= this.capacity) {
+                return this.free.poll();
+            }
+            if (this.allocated.compareAndSet(allocated, allocated + 1)) {
+                return new Packet(ByteBuffer.allocateDirect(this.maxPacketBytes));
+            }
+        }
+    }
+
+    private void sendLoop() {
+        while (true) {
+            Packet packet;
+            try {
+                packet = this.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (packet == null) {
+                if (this.closed) {
+                    return;
+                }
+                continue;
+            }
+
+            int bytes = packet.buffer.remaining();
+            try {
+                this.transport.send(packet.buffer, packet.lines);
+                this.sentMetrics.add(packet.lines);
+                this.sentBytes.add(bytes);
+                this.sentPackets.increment();
+            } catch (Exception e) {
+                this.sendErrors.increment();
+                this.droppedMetrics.add(packet.lines);
+                this.handler.handle(e);
+            } finally {
+                this.free.offer(packet);
+            }
+        }
+    }
+
+    private static final class Packet {
+
+        private final ByteBuffer buffer;
+        private int lines;
+
+        Packet(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
@@ -1,58 +1,55 @@
 package com.automattic.elasticsearch.statsd;
 
-import com.timgroup.statsd.StatsDClient;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.common.logging.ESLoggerFactory;
 
 public abstract class StatsdReporter {
 
-    private static final String DEFAULT_JOINER = ".";
     private static final Logger logger = ESLoggerFactory.getLogger(StatsdReporter.class.getName());
-    private StatsDClient statsdClient;
+    protected final StatsdMetricNameCache nameCache;
+    private BatchingStatsDClient statsdClient;
 
-    public StatsdReporter setStatsDClient(StatsDClient statsdClient) {
+    protected StatsdReporter(StatsdMetricNameCache nameCache) {
+        this.nameCache = nameCache;
+    }
+
+    public StatsdReporter setStatsDClient(BatchingStatsDClient statsdClient) {
         this.statsdClient = statsdClient;
         return this;
     }
 
     public abstract void run();
 
-    protected void sendGauge(String name, String valueName, long value) {
-        this.statsdClient.gauge(this.join(name, valueName), value);
+    protected void sendGauge(StatsdMetricScope scope, byte[] statKey, long value) {
+        this.statsdClient.gauge(scope, statKey, value);
     }
 
-    protected void sendGauge(String name, String valueName, double value) {
-        this.statsdClient.gauge(this.join(name, valueName), value);
+    protected void sendGauge(StatsdMetricScope scope, byte[] statKey, double value) {
+        this.statsdClient.gauge(scope, statKey, value);
     }
 
-    protected void sendCount(String name, String valueName, long value) {
-        this.statsdClient.count(this.join(name, valueName), value);
+    protected void sendGauge(StatsdMetricScope scope, String group, String valueName, long value) {
+        this.sendGauge(scope, this.nameCache.statKey(group, valueName), value);
     }
 
-    protected void sendTime(String name, String valueName, long value) {
-        this.statsdClient.time(this.join(name, valueName), value);
+    protected void sendGauge(StatsdMetricScope scope, String group, String valueName, double value) {
+        this.sendGauge(scope, this.nameCache.statKey(group, valueName), value);
     }
 
-    protected String sanitizeString(String s) {
-        return s.replace(' ', '-');
+    protected void sendCounter(StatsdMetricScope scope, byte[] statKey, long total) {
+        this.statsdClient.counter(scope, statKey, total);
     }
 
-    protected String buildMetricName(String name) {
-        return this.sanitizeString(name);
+    protected void sendCounter(StatsdMetricScope scope, String group, String valueName, long total) {
+        this.sendCounter(scope, this.nameCache.statKey(group, valueName), total);
     }
 
-    private String join(String... parts) {
-        if (parts == null) {
-            return null;
-        }
-        StringBuilder builder = new StringBuilder();
-        for (int i = 0; i < parts.length; i++) {
-            builder.append(parts[i]);
-            if (i < parts.length - 1) {
-                builder.append(DEFAULT_JOINER);
-            }
-        }
-        return builder.toString();
+    protected void sendCount(StatsdMetricScope scope, String group, String valueName, long delta) {
+        this.statsdClient.count(scope, this.nameCache.statKey(group, valueName), delta);
+    }
+
+    static String sanitize(String s) {
+        return s.replace(' ', '-');
     }
 
     protected void logException(Exception e) {
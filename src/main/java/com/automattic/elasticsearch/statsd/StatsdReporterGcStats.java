@@ -0,0 +1,55 @@
+package com.automattic.elasticsearch.statsd;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reports the garbage collections of the local node since the previous cycle: the number, p99 and maximum duration
+ * per collector, the number of collections per collector and cause, and the allocation and promotion rates.
+ */
+public class StatsdReporterGcStats extends StatsdReporter {
+
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final StatsdGcStats gcStats;
+    private final String nodeName;
+
+    public StatsdReporterGcStats(StatsdGcStats gcStats, String nodeName, StatsdMetricNameCache nameCache) {
+        super(nameCache);
+        this.gcStats = gcStats;
+        this.nodeName = nodeName;
+    }
+
+    public void run() {
+        try {
+            StatsdGcStats.Rates rates = this.gcStats.nextRates();
+            StatsdMetricScope prefix = this.nameCache.nodeScope(this.nodeName, "jvm.gc");
+            this.sendCounter(prefix, null, "allocated_in_bytes", this.gcStats.getAllocatedBytes());
+            this.sendGauge(prefix, null, "allocation_rate_in_bytes_per_sec", rates.getAllocationRate());
+            this.sendCounter(prefix, null, "promoted_in_bytes", this.gcStats.getPromotedBytes());
+            this.sendGauge(prefix, null, "promotion_rate_in_bytes_per_sec", rates.getPromotionRate());
+
+            for (StatsdGcStats.Collector collector : this.gcStats.getCollectors().values()) {
+                // the interval is consumed even if not reported, so the next cycle does not include it
+                Histogram durations = collector.getDurations().intervalHistogram();
+                StatsdMetricScope pauses = this.nameCache.nodeScope(this.nodeName, "jvm.gc.pauses", "collector", collector.getName());
+                this.sendGauge(pauses, null, "count", durations.getTotalCount());
+                if (durations.getTotalCount() > 0) {
+                    this.sendGauge(pauses, null, "p99_in_millis", durations.getValueAtPercentile(99) / MICROS_PER_MILLI);
+                    this.sendGauge(pauses, null, "max_in_millis", durations.getMaxValue() / MICROS_PER_MILLI);
+                }
+
+                for (Map.Entry<String, LongAdder> cause : collector.getCauses().entrySet()) {
+                    this.sendCounter(
+                            this.nameCache.nodeScope(this.nodeName, "jvm.gc.causes", "collector", collector.getName(), "cause", cause.getKey()),
+                            null, "count", cause.getValue().sum()
+                    );
+                }
+            }
+        } catch (Exception e) {
+            this.logException(e);
+        }
+    }
+}
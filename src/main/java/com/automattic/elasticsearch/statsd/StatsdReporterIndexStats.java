@@ -1,5 +1,6 @@
 package com.automattic.elasticsearch.statsd;
 
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
 import org.elasticsearch.index.cache.query.QueryCacheStats;
 import org.elasticsearch.index.cache.request.RequestCacheStats;
 import org.elasticsearch.index.engine.SegmentsStats;
@@ -7,142 +8,185 @@ import org.elasticsearch.index.fielddata.FieldDataStats;
 import org.elasticsearch.index.flush.FlushStats;
 import org.elasticsearch.index.get.GetStats;
 import org.elasticsearch.index.merge.MergeStats;
+import org.elasticsearch.index.recovery.RecoveryStats;
 import org.elasticsearch.index.refresh.RefreshStats;
 import org.elasticsearch.index.search.stats.SearchStats;
 import org.elasticsearch.index.shard.DocsStats;
 import org.elasticsearch.index.shard.IndexingStats;
 import org.elasticsearch.index.store.StoreStats;
+import org.elasticsearch.index.translog.TranslogStats;
 import org.elasticsearch.index.warmer.WarmerStats;
 import org.elasticsearch.search.suggest.completion.CompletionStats;
 
 public abstract class StatsdReporterIndexStats extends StatsdReporter {
 
-    protected void sendDocsStats(String name, DocsStats docsStats) {
-        if (null == docsStats) return;
-        this.sendGauge(name, "count", docsStats.getCount());
-        this.sendGauge(name, "deleted", docsStats.getDeleted());
+    protected StatsdReporterIndexStats(StatsdMetricNameCache nameCache) {
+        super(nameCache);
     }
 
-    protected void sendStoreStats(String name, StoreStats storeStats) {
-        if (null == storeStats) return;
-        this.sendGauge(name, "size_in_bytes", storeStats.sizeInBytes());
-        this.sendGauge(name, "throttle_time_in_millis", storeStats.getThrottleTime().millis());
-    }
-
-    protected void sendIndexingStats(String name, IndexingStats indexingStats) {
+    protected void sendCommonStats(StatsdMetricScope prefix, CommonStats stats) {
+        if (!prefix.reports()) {
+            return;
+        }
+        this.sendDocsStats(prefix, stats.getDocs());
+        this.sendStoreStats(prefix, stats.getStore());
+        this.sendIndexingStats(prefix, stats.getIndexing());
+        this.sendGetStats(prefix, stats.getGet());
+        this.sendSearchStats(prefix, stats.getSearch());
+        this.sendMergeStats(prefix, stats.getMerge());
+        this.sendRefreshStats(prefix, stats.getRefresh());
+        this.sendFlushStats(prefix, stats.getFlush());
+        this.sendWarmerStats(prefix, stats.getWarmer());
+        this.sendFielddataCacheStats(prefix, stats.getFieldData());
+        this.sendCompletionStats(prefix, stats.getCompletion());
+        this.sendSegmentsStats(prefix, stats.getSegments());
+        this.sendQueryCacheStats(prefix, stats.getQueryCache());
+        this.sendRequestCacheStats(prefix, stats.getRequestCache());
+        // only requested if enabled
+        this.sendTranslogStats(prefix, stats.getTranslog());
+        this.sendRecoveryStats(prefix, stats.getRecoveryStats());
+        //TODO: getSuggest
+    }
+
+    protected void sendDocsStats(StatsdMetricScope prefix, DocsStats docsStats) {
+        if (null == docsStats || !prefix.reports("docs")) return;
+        this.sendGauge(prefix, "docs", "count", docsStats.getCount());
+        this.sendGauge(prefix, "docs", "deleted", docsStats.getDeleted());
+    }
+
+    protected void sendStoreStats(StatsdMetricScope prefix, StoreStats storeStats) {
+        if (null == storeStats || !prefix.reports("store")) return;
+        this.sendGauge(prefix, "store", "size_in_bytes", storeStats.sizeInBytes());
+        this.sendCounter(prefix, "store", "throttle_time_in_millis", storeStats.getThrottleTime().millis());
+    }
+
+    protected void sendIndexingStats(StatsdMetricScope prefix, IndexingStats indexingStats) {
         if (null == indexingStats) return;
         IndexingStats.Stats totalStats = indexingStats.getTotal();
-        this.sendIndexingStatsStats(name, totalStats);
+        this.sendIndexingStatsStats(prefix, totalStats);
 
         // TODO: Maybe print out stats to shards level?
     }
 
-    protected void sendGetStats(String name, GetStats getStats) {
-        if (null == getStats) return;
-        this.sendGauge(name, "total", getStats.getCount());
-        this.sendGauge(name, "time_in_millis", getStats.getTimeInMillis());
-        this.sendGauge(name, "exists_total", getStats.getExistsCount());
-        this.sendGauge(name, "exists_time_in_millis", getStats.getExistsTimeInMillis());
-        this.sendGauge(name, "missing_total", getStats.getMissingCount());
-        this.sendGauge(name, "missing_time_in_millis", getStats.getMissingTimeInMillis());
-        this.sendGauge(name, "current", getStats.current());
+    protected void sendGetStats(StatsdMetricScope prefix, GetStats getStats) {
+        if (null == getStats || !prefix.reports("get")) return;
+        this.sendCounter(prefix, "get", "total", getStats.getCount());
+        this.sendCounter(prefix, "get", "time_in_millis", getStats.getTimeInMillis());
+        this.sendCounter(prefix, "get", "exists_total", getStats.getExistsCount());
+        this.sendCounter(prefix, "get", "exists_time_in_millis", getStats.getExistsTimeInMillis());
+        this.sendCounter(prefix, "get", "missing_total", getStats.getMissingCount());
+        this.sendCounter(prefix, "get", "missing_time_in_millis", getStats.getMissingTimeInMillis());
+        this.sendGauge(prefix, "get", "current", getStats.current());
     }
 
-    protected void sendSearchStats(String name, SearchStats searchStats) {
-        if (null == searchStats) return;
-        this.sendGauge(name, "open_contexts", searchStats.getOpenContexts());
+    protected void sendSearchStats(StatsdMetricScope prefix, SearchStats searchStats) {
+        if (null == searchStats || !prefix.reports("search")) return;
+        this.sendGauge(prefix, "search", "open_contexts", searchStats.getOpenContexts());
         SearchStats.Stats totalSearchStats = searchStats.getTotal();
-        this.sendSearchStatsStats(name, totalSearchStats);
+        this.sendSearchStatsStats(prefix, totalSearchStats);
 
         // TODO: Maybe print out stats to shards level?
     }
 
-    protected void sendMergeStats(String name, MergeStats mergeStats) {
-        if (null == mergeStats) return;
-        this.sendGauge(name, "current", mergeStats.getCurrent());
-        this.sendGauge(name, "current_docs", mergeStats.getCurrentNumDocs());
-        this.sendGauge(name, "current_size_in_bytes", mergeStats.getCurrentSizeInBytes());
-        this.sendGauge(name, "total", mergeStats.getTotal());
-        this.sendGauge(name, "total_time_in_millis", mergeStats.getTotalTimeInMillis());
-        this.sendGauge(name, "total_docs", mergeStats.getTotalNumDocs());
-        this.sendGauge(name, "total_size_in_bytes", mergeStats.getTotalSizeInBytes());
+    protected void sendMergeStats(StatsdMetricScope prefix, MergeStats mergeStats) {
+        if (null == mergeStats || !prefix.reports("merges")) return;
+        this.sendGauge(prefix, "merges", "current", mergeStats.getCurrent());
+        this.sendGauge(prefix, "merges", "current_docs", mergeStats.getCurrentNumDocs());
+        this.sendGauge(prefix, "merges", "current_size_in_bytes", mergeStats.getCurrentSizeInBytes());
+        this.sendCounter(prefix, "merges", "total", mergeStats.getTotal());
+        this.sendCounter(prefix, "merges", "total_time_in_millis", mergeStats.getTotalTimeInMillis());
+        this.sendCounter(prefix, "merges", "total_docs", mergeStats.getTotalNumDocs());
+        this.sendCounter(prefix, "merges", "total_size_in_bytes", mergeStats.getTotalSizeInBytes());
+    }
+
+    protected void sendRefreshStats(StatsdMetricScope prefix, RefreshStats refreshStats) {
+        if (null == refreshStats || !prefix.reports("refresh")) return;
+        this.sendCounter(prefix, "refresh", "total", refreshStats.getTotal());
+        this.sendCounter(prefix, "refresh", "total_time_in_millis", refreshStats.getTotalTimeInMillis());
+    }
+
+    protected void sendFlushStats(StatsdMetricScope prefix, FlushStats flushStats) {
+        if (null == flushStats || !prefix.reports("flush")) return;
+        this.sendCounter(prefix, "flush", "total", flushStats.getTotal());
+        this.sendCounter(prefix, "flush", "total_time_in_millis", flushStats.getTotalTimeInMillis());
     }
 
-    protected void sendRefreshStats(String name, RefreshStats refreshStats) {
-        if (null == refreshStats) return;
-        this.sendGauge(name, "total", refreshStats.getTotal());
-        this.sendGauge(name, "total_time_in_millis", refreshStats.getTotalTimeInMillis());
+    protected void sendWarmerStats(StatsdMetricScope prefix, WarmerStats warmerStats) {
+        if (null == warmerStats || !prefix.reports("warmer")) return;
+        this.sendGauge(prefix, "warmer", "current", warmerStats.current());
+        this.sendCounter(prefix, "warmer", "total", warmerStats.total());
+        this.sendCounter(prefix, "warmer", "total_time_in_millis", warmerStats.totalTimeInMillis());
     }
 
-    protected void sendFlushStats(String name, FlushStats flushStats) {
-        if (null == flushStats) return;
-        this.sendGauge(name, "total", flushStats.getTotal());
-        this.sendGauge(name, "total_time_in_millis", flushStats.getTotalTimeInMillis());
+    protected void sendFielddataCacheStats(StatsdMetricScope prefix, FieldDataStats fielddataStats) {
+        if (null == fielddataStats || !prefix.reports("fielddata")) return;
+        this.sendGauge(prefix, "fielddata", "memory_size_in_bytes", fielddataStats.getMemorySizeInBytes());
+        this.sendCounter(prefix, "fielddata", "evictions", fielddataStats.getEvictions());
     }
 
-    protected void sendWarmerStats(String name, WarmerStats warmerStats) {
-        if (null == warmerStats) return;
-        this.sendGauge(name, "current", warmerStats.current());
-        this.sendGauge(name, "total", warmerStats.total());
-        this.sendGauge(name, "total_time_in_millis", warmerStats.totalTimeInMillis());
+    protected void sendCompletionStats(StatsdMetricScope prefix, CompletionStats completionStats) {
+        if (null == completionStats || !prefix.reports("completion")) return;
+        this.sendGauge(prefix, "completion", "size_in_bytes", completionStats.getSizeInBytes());
     }
 
-    protected void sendFielddataCacheStats(String name, FieldDataStats fielddataStats) {
-        if (null == fielddataStats) return;
-        this.sendGauge(name, "memory_size_in_bytes", fielddataStats.getMemorySizeInBytes());
-        this.sendGauge(name, "evictions", fielddataStats.getEvictions());
+    protected void sendSegmentsStats(StatsdMetricScope prefix, SegmentsStats segmentsStats) {
+        if (null == segmentsStats || !prefix.reports("segments")) return;
+        this.sendGauge(prefix, "segments", "count", segmentsStats.getCount());
+        this.sendGauge(prefix, "segments", "memory_in_bytes", segmentsStats.getMemoryInBytes());
     }
 
-    protected void sendCompletionStats(String name, CompletionStats completionStats) {
-        if (null == completionStats) return;
-        this.sendGauge(name, "size_in_bytes", completionStats.getSizeInBytes());
+    protected void sendTranslogStats(StatsdMetricScope prefix, TranslogStats translogStats) {
+        if (null == translogStats || !prefix.reports("translog")) return;
+        this.sendGauge(prefix, "translog", "operations", translogStats.estimatedNumberOfOperations());
+        this.sendGauge(prefix, "translog", "size_in_bytes", translogStats.getTranslogSizeInBytes());
     }
 
-    protected void sendSegmentsStats(String name, SegmentsStats segmentsStats) {
-        if (null == segmentsStats) return;
-        this.sendGauge(name, "count", segmentsStats.getCount());
-        this.sendGauge(name, "memory_in_bytes", segmentsStats.getMemoryInBytes());
+    protected void sendRecoveryStats(StatsdMetricScope prefix, RecoveryStats recoveryStats) {
+        if (null == recoveryStats || !prefix.reports("recovery")) return;
+        this.sendGauge(prefix, "recovery", "current_as_source", recoveryStats.currentAsSource());
+        this.sendGauge(prefix, "recovery", "current_as_target", recoveryStats.currentAsTarget());
+        this.sendCounter(prefix, "recovery", "throttle_time_in_millis", recoveryStats.throttleTime().millis());
     }
 
-    protected void sendIndexingStatsStats(String name, IndexingStats.Stats indexingStatsStats) {
-        if (null == indexingStatsStats) return;
-        this.sendGauge(name, "index_total", indexingStatsStats.getIndexCount());
-        this.sendGauge(name, "index_time_in_millis", indexingStatsStats.getIndexTime().millis());
-        this.sendGauge(name, "index_current", indexingStatsStats.getIndexCount());
-        this.sendGauge(name, "delete_total", indexingStatsStats.getDeleteCount());
-        this.sendGauge(name, "delete_time_in_millis", indexingStatsStats.getDeleteTime().millis());
-        this.sendGauge(name, "delete_current", indexingStatsStats.getDeleteCurrent());
+    protected void sendIndexingStatsStats(StatsdMetricScope prefix, IndexingStats.Stats indexingStatsStats) {
+        if (null == indexingStatsStats || !prefix.reports("indexing")) return;
+        this.sendCounter(prefix, "indexing", "index_total", indexingStatsStats.getIndexCount());
+        this.sendCounter(prefix, "indexing", "index_time_in_millis", indexingStatsStats.getIndexTime().millis());
+        this.sendGauge(prefix, "indexing", "index_current", indexingStatsStats.getIndexCount());
+        this.sendCounter(prefix, "indexing", "delete_total", indexingStatsStats.getDeleteCount());
+        this.sendCounter(prefix, "indexing", "delete_time_in_millis", indexingStatsStats.getDeleteTime().millis());
+        this.sendGauge(prefix, "indexing", "delete_current", indexingStatsStats.getDeleteCurrent());
     }
 
-    protected void sendSearchStatsStats(String name, SearchStats.Stats searchStatsStats) {
-        if (null == searchStatsStats) return;
-        this.sendGauge(name, "query_total", searchStatsStats.getQueryCount());
-        this.sendGauge(name, "query_time_in_millis", searchStatsStats.getQueryTimeInMillis());
-        this.sendGauge(name, "query_current", searchStatsStats.getQueryCurrent());
-        this.sendGauge(name, "fetch_total", searchStatsStats.getFetchCount());
-        this.sendGauge(name, "fetch_time_in_millis", searchStatsStats.getFetchTimeInMillis());
-        this.sendGauge(name, "fetch_current", searchStatsStats.getFetchCurrent());
+    protected void sendSearchStatsStats(StatsdMetricScope prefix, SearchStats.Stats searchStatsStats) {
+        if (null == searchStatsStats || !prefix.reports("search")) return;
+        this.sendCounter(prefix, "search", "query_total", searchStatsStats.getQueryCount());
+        this.sendCounter(prefix, "search", "query_time_in_millis", searchStatsStats.getQueryTimeInMillis());
+        this.sendGauge(prefix, "search", "query_current", searchStatsStats.getQueryCurrent());
+        this.sendCounter(prefix, "search", "fetch_total", searchStatsStats.getFetchCount());
+        this.sendCounter(prefix, "search", "fetch_time_in_millis", searchStatsStats.getFetchTimeInMillis());
+        this.sendGauge(prefix, "search", "fetch_current", searchStatsStats.getFetchCurrent());
     }
 
-    protected void sendQueryCacheStats(String name, QueryCacheStats queryCacheStats) {
-        if (null == queryCacheStats) {
+    protected void sendQueryCacheStats(StatsdMetricScope prefix, QueryCacheStats queryCacheStats) {
+        if (null == queryCacheStats || !prefix.reports("query_cache")) {
             return;
         }
-        this.sendGauge(name, "cache_count", queryCacheStats.getCacheCount());
-        this.sendGauge(name, "hit_count", queryCacheStats.getHitCount());
-        this.sendGauge(name, "miss_count", queryCacheStats.getMissCount());
-        this.sendGauge(name, "cache_size", queryCacheStats.getCacheSize());
-        this.sendGauge(name, "memory_size_in_bytes", queryCacheStats.getMemorySizeInBytes());
-        this.sendGauge(name, "evictions", queryCacheStats.getEvictions());
+        this.sendCounter(prefix, "query_cache", "cache_count", queryCacheStats.getCacheCount());
+        this.sendCounter(prefix, "query_cache", "hit_count", queryCacheStats.getHitCount());
+        this.sendCounter(prefix, "query_cache", "miss_count", queryCacheStats.getMissCount());
+        this.sendGauge(prefix, "query_cache", "cache_size", queryCacheStats.getCacheSize());
+        this.sendGauge(prefix, "query_cache", "memory_size_in_bytes", queryCacheStats.getMemorySizeInBytes());
+        this.sendCounter(prefix, "query_cache", "evictions", queryCacheStats.getEvictions());
     }
 
-    protected void sendRequestCacheStats(String name, RequestCacheStats requestCacheStats) {
-        if (null == requestCacheStats) {
+    protected void sendRequestCacheStats(StatsdMetricScope prefix, RequestCacheStats requestCacheStats) {
+        if (null == requestCacheStats || !prefix.reports("request_cache")) {
             return;
         }
-        this.sendGauge(name, "hit_count", requestCacheStats.getHitCount());
-        this.sendGauge(name, "miss_count", requestCacheStats.getMissCount());
-        this.sendGauge(name, "evictions", requestCacheStats.getEvictions());
-        this.sendGauge(name, "memeory_size_in_bytes", requestCacheStats.getMemorySizeInBytes());
+        this.sendCounter(prefix, "request_cache", "hit_count", requestCacheStats.getHitCount());
+        this.sendCounter(prefix, "request_cache", "miss_count", requestCacheStats.getMissCount());
+        this.sendCounter(prefix, "request_cache", "evictions", requestCacheStats.getEvictions());
+        this.sendGauge(prefix, "request_cache", "memeory_size_in_bytes", requestCacheStats.getMemorySizeInBytes());
     }
 }
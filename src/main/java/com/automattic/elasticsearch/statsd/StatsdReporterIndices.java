@@ -3,45 +3,99 @@ package com.automattic.elasticsearch.statsd;
 import org.elasticsearch.action.admin.indices.stats.CommonStats;
 import org.elasticsearch.action.admin.indices.stats.IndexShardStats;
 import org.elasticsearch.action.admin.indices.stats.IndexStats;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsRequest;
 import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 public class StatsdReporterIndices extends StatsdReporterIndexStats {
 
     private final IndicesStatsResponse indicesStatsResponse;
     private final Boolean reportIndices;
     private final Boolean reportShards;
+    private final StatsdTopIndices topIndices;
+    private final StatsdIndexGroups indexGroups;
+    private final StatsdShardActivity shardActivity;
+
+    public StatsdReporterIndices(IndicesStatsResponse indicesStatsResponse, Boolean reportIndices, Boolean reportShards, StatsdMetricNameCache nameCache) {
+        this(indicesStatsResponse, reportIndices, reportShards, null, null, nameCache);
+    }
+
+    public StatsdReporterIndices(IndicesStatsResponse indicesStatsResponse, Boolean reportIndices, Boolean reportShards,
+                                 StatsdTopIndices topIndices, StatsdIndexGroups indexGroups, StatsdMetricNameCache nameCache) {
+        this(indicesStatsResponse, reportIndices, reportShards, topIndices, indexGroups, null, nameCache);
+    }
 
-    public StatsdReporterIndices(IndicesStatsResponse indicesStatsResponse, Boolean reportIndices, Boolean reportShards) {
+    /**
+     * @param topIndices    null to report every index in full detail
+     * @param indexGroups   null to report every index on its own
+     * @param shardActivity null to report every shard on every run
+     */
+    public StatsdReporterIndices(IndicesStatsResponse indicesStatsResponse, Boolean reportIndices, Boolean reportShards,
+                                 StatsdTopIndices topIndices, StatsdIndexGroups indexGroups,
+                                 StatsdShardActivity shardActivity, StatsdMetricNameCache nameCache) {
+        super(nameCache);
         this.indicesStatsResponse = indicesStatsResponse;
         this.reportIndices = reportIndices;
         this.reportShards = reportShards;
+        this.topIndices = topIndices;
+        this.indexGroups = indexGroups;
+        this.shardActivity = shardActivity;
+    }
+
+    /**
+     * Request for exactly the stats reported by {@link #sendCommonStats(StatsdMetricScope, CommonStats)}.
+     */
+    public static IndicesStatsRequest indicesStatsRequest() {
+        return indicesStatsRequest(false, false);
+    }
+
+    /**
+     * @param translog whether the optional translog stats are requested as well
+     * @param recovery whether the optional recovery stats are requested as well
+     */
+    public static IndicesStatsRequest indicesStatsRequest(boolean translog, boolean recovery) {
+        return new IndicesStatsRequest()
+                .clear()
+                .docs(true)
+                .store(true)
+                .indexing(true)
+                .get(true)
+                .search(true)
+                .merge(true)
+                .refresh(true)
+                .flush(true)
+                .warmer(true)
+                .fieldData(true)
+                .completion(true)
+                .segments(true)
+                .queryCache(true)
+                .requestCache(true)
+                .translog(translog)
+                .recovery(recovery);
     }
 
     public void run() {
         try {
             // First report totals
             this.sendCommonStats(
-                    this.buildMetricName("indices"),
+                    this.nameCache.indicesScope(),
                     this.indicesStatsResponse.getTotal()
             );
 
             if (this.reportIndices) {
-                for (IndexStats indexStats : this.indicesStatsResponse.getIndices().values()) {
-                    String indexPrefix = "index." + indexStats.getIndex();
-
-                    this.sendCommonStats(
-                            this.buildMetricName(indexPrefix + ".total"),
-                            indexStats.getTotal()
-                    );
-
-                    if (this.reportShards) {
-                        for (IndexShardStats indexShardStats : indexStats.getIndexShards().values()) {
-                            this.sendCommonStats(
-                                    this.buildMetricName(indexPrefix + "." + indexShardStats.getShardId().id()),
-                                    indexShardStats.getTotal()
-                            );
-                        }
+                Collection<IndexStats> ungrouped = this.sendIndexGroupStats();
+                if (this.topIndices == null) {
+                    for (IndexStats indexStats : ungrouped) {
+                        this.sendIndexStats(indexStats);
                     }
+                } else {
+                    this.sendTopIndexStats(ungrouped);
                 }
             }
         } catch (Exception e) {
@@ -49,22 +103,81 @@ public class StatsdReporterIndices extends StatsdReporterIndexStats {
         }
     }
 
-    private void sendCommonStats(String prefix, CommonStats stats) {
-        this.sendDocsStats(prefix + ".docs", stats.getDocs());
-        this.sendStoreStats(prefix + ".store", stats.getStore());
-        this.sendIndexingStats(prefix + ".indexing", stats.getIndexing());
-        this.sendGetStats(prefix + ".get", stats.getGet());
-        this.sendSearchStats(prefix + ".search", stats.getSearch());
-        this.sendMergeStats(prefix + ".merges", stats.getMerge());
-        this.sendRefreshStats(prefix + ".refresh", stats.getRefresh());
-        this.sendFlushStats(prefix + ".flush", stats.getFlush());
-        this.sendWarmerStats(prefix + ".warmer", stats.getWarmer());
-        this.sendFielddataCacheStats(prefix + ".fielddata", stats.getFieldData());
-        this.sendCompletionStats(prefix + ".completion", stats.getCompletion());
-        this.sendSegmentsStats(prefix + ".segments", stats.getSegments());
-        this.sendQueryCacheStats(prefix + ".query_cache", stats.getQueryCache());
-        this.sendRequestCacheStats(prefix + ".request_cache", stats.getRequestCache());
-        //TODO: getTranslog
-        //TODO: getSuggest
+    /**
+     * Reports the sums of the index groups, without creating scopes for their members, and returns the indices which
+     * are not part of any group. Indices rejected by the filter are not summed up.
+     */
+    private Collection<IndexStats> sendIndexGroupStats() {
+        Collection<IndexStats> indices = this.indicesStatsResponse.getIndices().values();
+        if (this.indexGroups == null) {
+            return indices;
+        }
+
+        List<IndexStats> ungrouped = new ArrayList<>(indices.size());
+        Map<String, CommonStats> groups = new HashMap<>();
+        for (IndexStats indexStats : indices) {
+            String group = this.indexGroups.groupOf(indexStats.getIndex());
+            if (group == null) {
+                ungrouped.add(indexStats);
+            } else if (this.nameCache.reportsIndex(indexStats.getIndex())) {
+                groups.computeIfAbsent(group, g -> new CommonStats()).add(indexStats.getTotal());
+            }
+        }
+
+        for (Map.Entry<String, CommonStats> group : groups.entrySet()) {
+            this.sendCommonStats(this.nameCache.indexGroupScope(group.getKey()), group.getValue());
+        }
+        return ungrouped;
+    }
+
+    /**
+     * Reports the top indices in full detail and the sum of all others as the {@code _other} index. Indices rejected
+     * by the filter are neither ranked nor summed up.
+     */
+    private void sendTopIndexStats(Collection<IndexStats> indices) {
+        List<IndexStats> reported = new ArrayList<>(indices.size());
+        for (IndexStats indexStats : indices) {
+            if (this.nameCache.reportsIndex(indexStats.getIndex())) {
+                reported.add(indexStats);
+            }
+        }
+
+        Set<String> top = this.topIndices.select(reported);
+        CommonStats other = null;
+        for (IndexStats indexStats : reported) {
+            if (top.contains(indexStats.getIndex())) {
+                this.sendIndexStats(indexStats);
+            } else {
+                if (other == null) {
+                    other = new CommonStats();
+                }
+                other.add(indexStats.getTotal());
+            }
+        }
+
+        if (other != null) {
+            this.sendCommonStats(this.nameCache.indexScope(StatsdTopIndices.OTHER_INDEX), other);
+        }
+    }
+
+    private void sendIndexStats(IndexStats indexStats) {
+        this.sendCommonStats(
+                this.nameCache.indexScope(indexStats.getIndex()),
+                indexStats.getTotal()
+        );
+
+        if (this.reportShards) {
+            for (IndexShardStats indexShardStats : indexStats.getIndexShards().values()) {
+                int shardId = indexShardStats.getShardId().id();
+                if (this.shardActivity != null && !this.shardActivity.shouldReport(
+                        indexStats.getIndex(), shardId, StatsdShardActivity.signal(indexShardStats.getTotal()))) {
+                    continue;
+                }
+                this.sendCommonStats(
+                        this.nameCache.shardScope(indexStats.getIndex(), shardId),
+                        indexShardStats.getTotal()
+                );
+            }
+        }
     }
 }
@@ -0,0 +1,110 @@
+package com.automattic.elasticsearch.statsd;
+
+import org.apache.lucene.store.AlreadyClosedException;
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
+import org.elasticsearch.action.admin.indices.stats.CommonStatsFlags;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.shard.IllegalIndexShardStateException;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.IndexShardState;
+import org.elasticsearch.indices.IndicesService;
+
+/**
+ * Reports the stats of the started shard copies allocated to the local node straight from the
+ * {@link IndicesService}, without a round trip through the indices stats action. Primaries and replicas are reported
+ * under separate scopes, the replicas with the name of the node holding them. Every copy is reported by exactly one
+ * node, so the primaries give the per index primaries and primaries plus replicas the per index totals of the
+ * indices stats when summed up in StatsD / Graphite.
+ */
+public class StatsdReporterLocalShards extends StatsdReporterIndexStats {
+
+    /**
+     * Flags for exactly the stats reported by {@link #sendCommonStats(StatsdMetricScope, CommonStats)}, except the
+     * optional ones.
+     */
+    private static final CommonStatsFlags FLAGS = new CommonStatsFlags(
+            CommonStatsFlags.Flag.Docs,
+            CommonStatsFlags.Flag.Store,
+            CommonStatsFlags.Flag.Indexing,
+            CommonStatsFlags.Flag.Get,
+            CommonStatsFlags.Flag.Search,
+            CommonStatsFlags.Flag.Merge,
+            CommonStatsFlags.Flag.Refresh,
+            CommonStatsFlags.Flag.Flush,
+            CommonStatsFlags.Flag.Warmer,
+            CommonStatsFlags.Flag.FieldData,
+            CommonStatsFlags.Flag.Completion,
+            CommonStatsFlags.Flag.Segments,
+            CommonStatsFlags.Flag.QueryCache,
+            CommonStatsFlags.Flag.RequestCache
+    );
+
+    private final IndicesService indicesService;
+    private final String nodeName;
+    private final CommonStatsFlags flags;
+    private final StatsdShardActivity shardActivity;
+
+    public StatsdReporterLocalShards(IndicesService indicesService, String nodeName, StatsdMetricNameCache nameCache) {
+        this(indicesService, nodeName, false, false, null, nameCache);
+    }
+
+    /**
+     * @param nodeName      the name of the local node in the replica scopes
+     * @param shardActivity null to report every shard copy on every run
+     */
+    public StatsdReporterLocalShards(IndicesService indicesService, String nodeName, boolean reportTranslog,
+                                     boolean reportRecovery, StatsdShardActivity shardActivity,
+                                     StatsdMetricNameCache nameCache) {
+        super(nameCache);
+        this.indicesService = indicesService;
+        this.nodeName = nodeName;
+        if (reportTranslog || reportRecovery) {
+            this.flags = FLAGS.clone()
+                    .set(CommonStatsFlags.Flag.Translog, reportTranslog)
+                    .set(CommonStatsFlags.Flag.Recovery, reportRecovery);
+        } else {
+            this.flags = FLAGS;
+        }
+        this.shardActivity = shardActivity;
+    }
+
+    public void run() {
+        try {
+            for (IndexService indexService : this.indicesService) {
+                for (IndexShard indexShard : indexService) {
+                    ShardRouting routing = indexShard.routingEntry();
+                    if (routing == null || indexShard.state() != IndexShardState.STARTED) {
+                        continue;
+                    }
+
+                    StatsdMetricScope scope = routing.primary()
+                            ? this.nameCache.primaryScope(indexShard.shardId().getIndexName(), indexShard.shardId().id())
+                            : this.nameCache.replicaScope(indexShard.shardId().getIndexName(), indexShard.shardId().id(), this.nodeName);
+                    if (!scope.reports()) {
+                        continue;
+                    }
+
+                    CommonStats stats;
+                    try {
+                        // idle shards are skipped before their store and segments stats are read
+                        if (this.shardActivity != null && !this.shardActivity.shouldReport(
+                                indexShard.shardId().getIndexName(),
+                                indexShard.shardId().id(),
+                                StatsdShardActivity.signal(indexShard))) {
+                            continue;
+                        }
+                        stats = new CommonStats(this.indicesService.getIndicesQueryCache(), indexShard, this.flags);
+                    } catch (AlreadyClosedException | IllegalIndexShardStateException e) {
+                        // the shard was closed or relocated in the meantime, it is reported by its new owner
+                        continue;
+                    }
+
+                    this.sendCommonStats(scope, stats);
+                }
+            }
+        } catch (Exception e) {
+            this.logException(e);
+        }
+    }
+}
@@ -6,28 +6,39 @@ public class StatsdReporterNodeIndicesStats extends StatsdReporterIndexStats {
 
     private final NodeIndicesStats nodeIndicesStats;
     private final String nodeName;
+    private final boolean reportRecovery;
 
-    public StatsdReporterNodeIndicesStats(NodeIndicesStats nodeIndicesStats, String nodeName) {
+    public StatsdReporterNodeIndicesStats(NodeIndicesStats nodeIndicesStats, String nodeName, StatsdMetricNameCache nameCache) {
+        this(nodeIndicesStats, nodeName, false, nameCache);
+    }
+
+    public StatsdReporterNodeIndicesStats(NodeIndicesStats nodeIndicesStats, String nodeName, boolean reportRecovery,
+                                          StatsdMetricNameCache nameCache) {
+        super(nameCache);
         this.nodeIndicesStats = nodeIndicesStats;
         this.nodeName = nodeName;
+        this.reportRecovery = reportRecovery;
     }
 
     public void run() {
         try {
-            String prefix = this.buildMetricName("node." + this.nodeName + ".indices");
-            this.sendDocsStats(prefix + ".docs", this.nodeIndicesStats.getDocs());
-            this.sendStoreStats(prefix + ".store", this.nodeIndicesStats.getStore());
-            this.sendIndexingStats(prefix + ".indexing", this.nodeIndicesStats.getIndexing());
-            this.sendGetStats(prefix + ".get", this.nodeIndicesStats.getGet());
-            this.sendSearchStats(prefix + ".search", this.nodeIndicesStats.getSearch());
-            this.sendMergeStats(prefix + ".merges", this.nodeIndicesStats.getMerge());
-            this.sendRefreshStats(prefix + ".refresh", this.nodeIndicesStats.getRefresh());
-            this.sendFlushStats(prefix + ".flush", this.nodeIndicesStats.getFlush());
-            this.sendFielddataCacheStats(prefix + ".fielddata", this.nodeIndicesStats.getFieldData());
-            this.sendCompletionStats(prefix + ".completion", this.nodeIndicesStats.getCompletion());
-            this.sendSegmentsStats(prefix + ".segments", this.nodeIndicesStats.getSegments());
-            this.sendQueryCacheStats(prefix + ".query_cache", this.nodeIndicesStats.getQueryCache());
-            this.sendRequestCacheStats(prefix + ".request_cache", this.nodeIndicesStats.getRequestCache());
+            StatsdMetricScope prefix = this.nameCache.nodeScope(this.nodeName, "indices");
+            this.sendDocsStats(prefix, this.nodeIndicesStats.getDocs());
+            this.sendStoreStats(prefix, this.nodeIndicesStats.getStore());
+            this.sendIndexingStats(prefix, this.nodeIndicesStats.getIndexing());
+            this.sendGetStats(prefix, this.nodeIndicesStats.getGet());
+            this.sendSearchStats(prefix, this.nodeIndicesStats.getSearch());
+            this.sendMergeStats(prefix, this.nodeIndicesStats.getMerge());
+            this.sendRefreshStats(prefix, this.nodeIndicesStats.getRefresh());
+            this.sendFlushStats(prefix, this.nodeIndicesStats.getFlush());
+            this.sendFielddataCacheStats(prefix, this.nodeIndicesStats.getFieldData());
+            this.sendCompletionStats(prefix, this.nodeIndicesStats.getCompletion());
+            this.sendSegmentsStats(prefix, this.nodeIndicesStats.getSegments());
+            this.sendQueryCacheStats(prefix, this.nodeIndicesStats.getQueryCache());
+            this.sendRequestCacheStats(prefix, this.nodeIndicesStats.getRequestCache());
+            if (this.reportRecovery) {
+                this.sendRecoveryStats(prefix, this.nodeIndicesStats.getRecoveryStats());
+            }
         } catch (Exception e) {
             this.logException(e);
         }
@@ -1,7 +1,11 @@
 package com.automattic.elasticsearch.statsd;
 
 import org.elasticsearch.action.admin.cluster.node.stats.NodeStats;
+import org.elasticsearch.discovery.DiscoveryStats;
 import org.elasticsearch.http.HttpStats;
+import org.elasticsearch.indices.breaker.AllCircuitBreakerStats;
+import org.elasticsearch.indices.breaker.CircuitBreakerStats;
+import org.elasticsearch.ingest.IngestStats;
 import org.elasticsearch.monitor.fs.FsInfo;
 import org.elasticsearch.monitor.jvm.JvmStats;
 import org.elasticsearch.monitor.os.OsStats;
@@ -9,181 +13,285 @@ import org.elasticsearch.monitor.process.ProcessStats;
 import org.elasticsearch.threadpool.ThreadPoolStats;
 import org.elasticsearch.transport.TransportStats;
 
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.Map;
 
 public class StatsdReporterNodeStats extends StatsdReporter {
 
-    private final NodeStats nodeStats;
+    private final StatsdNodeStatsCollector nodeStats;
     private final String nodeName;
     private final Boolean statsdReportFsDetails;
+    private final boolean statsdReportBufferPools;
+    private final StatsdThreadPoolSampler threadPoolSampler;
 
-    public StatsdReporterNodeStats(NodeStats nodeStats, String nodeName, Boolean statsdReportFsDetails) {
+    public StatsdReporterNodeStats(NodeStats nodeStats, String nodeName, Boolean statsdReportFsDetails, StatsdMetricNameCache nameCache) {
+        this(StatsdNodeStatsCollector.of(nodeStats), null, nodeName, statsdReportFsDetails, false, nameCache);
+    }
+
+    /**
+     * @param threadPoolSampler the sampler of the thread pools between two reports, or null if not sampled
+     */
+    public StatsdReporterNodeStats(StatsdNodeStatsCollector nodeStats, StatsdThreadPoolSampler threadPoolSampler, String nodeName,
+                                   Boolean statsdReportFsDetails, boolean statsdReportBufferPools, StatsdMetricNameCache nameCache) {
+        super(nameCache);
         this.nodeStats = nodeStats;
+        this.threadPoolSampler = threadPoolSampler;
         this.nodeName = nodeName;
         this.statsdReportFsDetails = statsdReportFsDetails;
+        this.statsdReportBufferPools = statsdReportBufferPools;
     }
 
     public void run() {
         try {
-            this.sendNodeFsStats(this.nodeStats.getFs());
-            this.sendNodeJvmStats(this.nodeStats.getJvm());
-            this.sendNodeOsStats(this.nodeStats.getOs());
-            this.sendNodeProcessStats(this.nodeStats.getProcess());
-            this.sendNodeHttpStats(this.nodeStats.getHttp());
-            this.sendNodeTransportStats(this.nodeStats.getTransport());
-            this.sendNodeThreadPoolStats(this.nodeStats.getThreadPool());
+            // a family is only sampled if the filter may accept any of its metrics
+            if (this.reports("fs")) {
+                this.sendNodeFsStats(this.nodeStats.fs());
+            }
+            if (this.reports("jvm")) {
+                this.sendNodeJvmStats(this.nodeStats.jvm());
+            }
+            if (this.reports("os")) {
+                this.sendNodeOsStats(this.nodeStats.os());
+            }
+            if (this.reports("process")) {
+                this.sendNodeProcessStats(this.nodeStats.process());
+            }
+            if (this.reports("http")) {
+                this.sendNodeHttpStats(this.nodeStats.http());
+            }
+            if (this.reports("transport")) {
+                this.sendNodeTransportStats(this.nodeStats.transport());
+            }
+            if (this.reports("thread_pool")) {
+                this.sendNodeThreadPoolStats(this.nodeStats.threadPool());
+            }
+            if (this.reports("breakers")) {
+                this.sendNodeBreakerStats(this.nodeStats.breakers());
+            }
+            if (this.reports("ingest")) {
+                this.sendNodeIngestStats(this.nodeStats.ingest());
+            }
+            if (this.reports("discovery")) {
+                this.sendNodeDiscoveryStats(this.nodeStats.discovery());
+            }
         } catch (Exception e) {
             this.logException(e);
         }
     }
 
     private void sendNodeThreadPoolStats(ThreadPoolStats threadPoolStats) {
-        String prefix = this.getPrefix("thread_pool");
+        Map<String, StatsdThreadPoolSampler.Interval> intervals = this.threadPoolSampler == null
+                ? Collections.emptyMap()
+                : this.threadPoolSampler.nextInterval();
         Iterator<ThreadPoolStats.Stats> statsIterator = threadPoolStats.iterator();
         while (statsIterator.hasNext()) {
             ThreadPoolStats.Stats stats = statsIterator.next();
-            String threadPoolType = prefix + "." + stats.getName();
+            StatsdMetricScope threadPoolType = this.getScope("thread_pool", "thread_pool", stats.getName());
+            if (!threadPoolType.reports()) {
+                continue;
+            }
 
-            this.sendGauge(threadPoolType, "threads", stats.getThreads());
-            this.sendGauge(threadPoolType, "queue", stats.getQueue());
-            this.sendGauge(threadPoolType, "active", stats.getActive());
-            this.sendGauge(threadPoolType, "rejected", stats.getRejected());
-            this.sendGauge(threadPoolType, "largest", stats.getLargest());
-            this.sendGauge(threadPoolType, "completed", stats.getCompleted());
+            this.sendGauge(threadPoolType, null, "threads", stats.getThreads());
+            this.sendGauge(threadPoolType, null, "queue", stats.getQueue());
+            this.sendGauge(threadPoolType, null, "active", stats.getActive());
+            this.sendCounter(threadPoolType, null, "rejected", stats.getRejected());
+            this.sendGauge(threadPoolType, null, "largest", stats.getLargest());
+            this.sendCounter(threadPoolType, null, "completed", stats.getCompleted());
+
+            StatsdThreadPoolSampler.Interval interval = intervals.get(stats.getName());
+            if (interval != null) {
+                this.sendGauge(threadPoolType, null, "queue_max", interval.getQueueMax());
+                this.sendGauge(threadPoolType, null, "queue_avg", interval.getQueueAvg());
+                this.sendGauge(threadPoolType, null, "active_max", interval.getActiveMax());
+            }
         }
     }
 
     private void sendNodeTransportStats(TransportStats transportStats) {
-        String prefix = this.getPrefix("transport");
-        this.sendGauge(prefix, "server_open", transportStats.serverOpen());
-        this.sendGauge(prefix, "rx_count", transportStats.rxCount());
-        this.sendGauge(prefix, "rx_size_in_bytes", transportStats.rxSize().getBytes());
-        this.sendGauge(prefix, "tx_count", transportStats.txCount());
-        this.sendGauge(prefix, "tx_size_in_bytes", transportStats.txSize().getBytes());
+        StatsdMetricScope prefix = this.getScope("transport");
+        this.sendGauge(prefix, null, "server_open", transportStats.serverOpen());
+        this.sendCounter(prefix, null, "rx_count", transportStats.rxCount());
+        this.sendCounter(prefix, null, "rx_size_in_bytes", transportStats.rxSize().getBytes());
+        this.sendCounter(prefix, null, "tx_count", transportStats.txCount());
+        this.sendCounter(prefix, null, "tx_size_in_bytes", transportStats.txSize().getBytes());
     }
 
     private void sendNodeProcessStats(ProcessStats processStats) {
-        String prefix = this.getPrefix("process");
+        StatsdMetricScope prefix = this.getScope("process");
 
-        this.sendGauge(prefix, "open_file_descriptors", processStats.getOpenFileDescriptors());
+        this.sendGauge(prefix, null, "open_file_descriptors", processStats.getOpenFileDescriptors());
 
         if (processStats.getCpu() != null) {
-            this.sendGauge(prefix + ".cpu", "percent", processStats.getCpu().getPercent());
-            this.sendGauge(prefix + ".cpu", "total_in_millis", processStats.getCpu().getTotal().millis());
+            this.sendGauge(prefix, "cpu", "percent", processStats.getCpu().getPercent());
+            this.sendCounter(prefix, "cpu", "total_in_millis", processStats.getCpu().getTotal().millis());
         }
 
         if (processStats.getMem() != null) {
-            this.sendGauge(prefix + ".mem", "total_virtual_in_bytes", processStats.getMem().getTotalVirtual().getBytes());
+            this.sendGauge(prefix, "mem", "total_virtual_in_bytes", processStats.getMem().getTotalVirtual().getBytes());
         }
     }
 
     private void sendNodeOsStats(OsStats osStats) {
-        String prefix = this.getPrefix("os");
+        StatsdMetricScope prefix = this.getScope("os");
 
-        this.sendGauge(prefix + ".load_average", "1m", osStats.getCpu().getLoadAverage()[0]);
-        this.sendGauge(prefix + ".load_average", "5m", osStats.getCpu().getLoadAverage()[1]);
-        this.sendGauge(prefix + ".load_average", "15m", osStats.getCpu().getLoadAverage()[2]);
+        this.sendGauge(prefix, "load_average", "1m", osStats.getCpu().getLoadAverage()[0]);
+        this.sendGauge(prefix, "load_average", "5m", osStats.getCpu().getLoadAverage()[1]);
+        this.sendGauge(prefix, "load_average", "15m", osStats.getCpu().getLoadAverage()[2]);
 
-        this.sendGauge(prefix, "cpu_percent", osStats.getCpu().getPercent());
+        this.sendGauge(prefix, null, "cpu_percent", osStats.getCpu().getPercent());
 
         if (osStats.getMem() != null) {
-            this.sendGauge(prefix + ".mem", "free_in_bytes", osStats.getMem().getFree().getBytes());
-            this.sendGauge(prefix + ".mem", "used_in_bytes", osStats.getMem().getUsed().getBytes());
-            this.sendGauge(prefix + ".mem", "free_percent", osStats.getMem().getFreePercent());
-            this.sendGauge(prefix + ".mem", "used_percent", osStats.getMem().getUsedPercent());
+            this.sendGauge(prefix, "mem", "free_in_bytes", osStats.getMem().getFree().getBytes());
+            this.sendGauge(prefix, "mem", "used_in_bytes", osStats.getMem().getUsed().getBytes());
+            this.sendGauge(prefix, "mem", "free_percent", osStats.getMem().getFreePercent());
+            this.sendGauge(prefix, "mem", "used_percent", osStats.getMem().getUsedPercent());
         }
 
         if (osStats.getSwap() != null) {
-            this.sendGauge(prefix + ".swap", "free_in_bytes", osStats.getSwap().getFree().getBytes());
-            this.sendGauge(prefix + ".swap", "used_in_bytes", osStats.getSwap().getUsed().getBytes());
+            this.sendGauge(prefix, "swap", "free_in_bytes", osStats.getSwap().getFree().getBytes());
+            this.sendGauge(prefix, "swap", "used_in_bytes", osStats.getSwap().getUsed().getBytes());
         }
 
         if (osStats.getCgroup() != null) {
-            this.sendGauge(prefix + ".cgroup", "cpuacct.usage", osStats.getCgroup().getCpuAcctUsageNanos());
-            this.sendGauge(prefix + ".cgroup", "cpu.cfs_period_micros", osStats.getCgroup().getCpuCfsPeriodMicros());
-            this.sendGauge(prefix + ".cgroup", "cpu.cfs_quota_micros", osStats.getCgroup().getCpuCfsQuotaMicros());
+            this.sendCounter(prefix, "cgroup", "cpuacct.usage", osStats.getCgroup().getCpuAcctUsageNanos());
+            this.sendGauge(prefix, "cgroup", "cpu.cfs_period_micros", osStats.getCgroup().getCpuCfsPeriodMicros());
+            this.sendGauge(prefix, "cgroup", "cpu.cfs_quota_micros", osStats.getCgroup().getCpuCfsQuotaMicros());
 
             if (osStats.getCgroup().getCpuStat() != null) {
-                this.sendGauge(prefix + ".cgroup.cpu.stat", "number_of_elapsed_periods", osStats.getCgroup().getCpuStat().getNumberOfElapsedPeriods());
-                this.sendGauge(prefix + ".cgroup.cpu.stat", "number_of_times_throttled", osStats.getCgroup().getCpuStat().getNumberOfTimesThrottled());
-                this.sendGauge(prefix + ".cgroup.cpu.stat", "time_throttled_nanos", osStats.getCgroup().getCpuStat().getTimeThrottledNanos());
+                this.sendCounter(prefix, "cgroup.cpu.stat", "number_of_elapsed_periods", osStats.getCgroup().getCpuStat().getNumberOfElapsedPeriods());
+                this.sendCounter(prefix, "cgroup.cpu.stat", "number_of_times_throttled", osStats.getCgroup().getCpuStat().getNumberOfTimesThrottled());
+                this.sendCounter(prefix, "cgroup.cpu.stat", "time_throttled_nanos", osStats.getCgroup().getCpuStat().getTimeThrottledNanos());
             }
         }
     }
 
     private void sendNodeJvmStats(JvmStats jvmStats) {
-        String prefix = this.getPrefix("jvm");
+        StatsdMetricScope prefix = this.getScope("jvm");
 
         // mem
-        this.sendGauge(prefix + ".mem", "heap_used_percent", jvmStats.getMem().getHeapUsedPercent());
-        this.sendGauge(prefix + ".mem", "heap_used_in_bytes", jvmStats.getMem().getHeapUsed().getBytes());
-        this.sendGauge(prefix + ".mem", "heap_committed_in_bytes", jvmStats.getMem().getHeapCommitted().getBytes());
-        this.sendGauge(prefix + ".mem", "non_heap_used_in_bytes", jvmStats.getMem().getNonHeapUsed().getBytes());
-        this.sendGauge(prefix + ".mem", "non_heap_committed_in_bytes", jvmStats.getMem().getNonHeapCommitted().getBytes());
+        this.sendGauge(prefix, "mem", "heap_used_percent", jvmStats.getMem().getHeapUsedPercent());
+        this.sendGauge(prefix, "mem", "heap_used_in_bytes", jvmStats.getMem().getHeapUsed().getBytes());
+        this.sendGauge(prefix, "mem", "heap_committed_in_bytes", jvmStats.getMem().getHeapCommitted().getBytes());
+        this.sendGauge(prefix, "mem", "non_heap_used_in_bytes", jvmStats.getMem().getNonHeapUsed().getBytes());
+        this.sendGauge(prefix, "mem", "non_heap_committed_in_bytes", jvmStats.getMem().getNonHeapCommitted().getBytes());
         for (JvmStats.MemoryPool memoryPool : jvmStats.getMem()) {
-            String memoryPoolType = prefix + ".mem.pools." + memoryPool.getName();
+            StatsdMetricScope memoryPoolType = this.getScope("jvm.mem.pools", "pool", memoryPool.getName());
 
-            this.sendGauge(memoryPoolType, "max_in_bytes", memoryPool.getMax().getBytes());
-            this.sendGauge(memoryPoolType, "used_in_bytes", memoryPool.getUsed().getBytes());
-            this.sendGauge(memoryPoolType, "peak_used_in_bytes", memoryPool.getPeakUsed().getBytes());
-            this.sendGauge(memoryPoolType, "peak_max_in_bytes", memoryPool.getPeakMax().getBytes());
+            this.sendGauge(memoryPoolType, null, "max_in_bytes", memoryPool.getMax().getBytes());
+            this.sendGauge(memoryPoolType, null, "used_in_bytes", memoryPool.getUsed().getBytes());
+            this.sendGauge(memoryPoolType, null, "peak_used_in_bytes", memoryPool.getPeakUsed().getBytes());
+            this.sendGauge(memoryPoolType, null, "peak_max_in_bytes", memoryPool.getPeakMax().getBytes());
         }
 
         // threads
-        this.sendGauge(prefix + ".threads", "count", jvmStats.getThreads().getCount());
-        this.sendGauge(prefix + ".threads", "peak_count", jvmStats.getThreads().getPeakCount());
+        this.sendGauge(prefix, "threads", "count", jvmStats.getThreads().getCount());
+        this.sendGauge(prefix, "threads", "peak_count", jvmStats.getThreads().getPeakCount());
 
         // garbage collectors
         for (JvmStats.GarbageCollector collector : jvmStats.getGc()) {
-            String gcCollectorType = prefix + ".gc.collectors." + collector.getName();
+            StatsdMetricScope gcCollectorType = this.getScope("jvm.gc.collectors", "collector", collector.getName());
 
-            this.sendGauge(gcCollectorType, "collection_count", collector.getCollectionCount());
-            this.sendGauge(gcCollectorType, "collection_time_in_millis", collector.getCollectionTime().millis());
+            this.sendCounter(gcCollectorType, null, "collection_count", collector.getCollectionCount());
+            this.sendCounter(gcCollectorType, null, "collection_time_in_millis", collector.getCollectionTime().millis());
         }
 
-        // TODO: buffer pools
+        // buffer pools, direct and mapped memory is not limited by the heap
+        if (this.statsdReportBufferPools && jvmStats.getBufferPools() != null) {
+            for (JvmStats.BufferPool bufferPool : jvmStats.getBufferPools()) {
+                StatsdMetricScope bufferPoolType = this.getScope("jvm.buffer_pools", "buffer_pool", bufferPool.getName());
+
+                this.sendGauge(bufferPoolType, null, "count", bufferPool.getCount());
+                this.sendGauge(bufferPoolType, null, "used_in_bytes", bufferPool.getUsed().getBytes());
+                this.sendGauge(bufferPoolType, null, "total_capacity_in_bytes", bufferPool.getTotalCapacity().getBytes());
+            }
+        }
+    }
+
+    private void sendNodeBreakerStats(AllCircuitBreakerStats breakerStats) {
+        if (breakerStats == null) {
+            return;
+        }
+        for (CircuitBreakerStats breaker : breakerStats.getAllStats()) {
+            StatsdMetricScope breakerType = this.getScope("breakers", "breaker", breaker.getName());
+
+            this.sendGauge(breakerType, null, "limit_size_in_bytes", breaker.getLimit());
+            this.sendGauge(breakerType, null, "estimated_size_in_bytes", breaker.getEstimated());
+            this.sendGauge(breakerType, null, "overhead", breaker.getOverhead());
+            this.sendCounter(breakerType, null, "tripped", breaker.getTrippedCount());
+        }
+    }
+
+    private void sendNodeIngestStats(IngestStats ingestStats) {
+        if (ingestStats == null) {
+            return;
+        }
+        this.sendIngestStats(this.getScope("ingest"), ingestStats.getTotalStats());
+        for (Map.Entry<String, IngestStats.Stats> pipeline : ingestStats.getStatsPerPipeline().entrySet()) {
+            this.sendIngestStats(this.getScope("ingest.pipelines", "pipeline", pipeline.getKey()), pipeline.getValue());
+        }
+    }
+
+    private void sendIngestStats(StatsdMetricScope prefix, IngestStats.Stats stats) {
+        this.sendCounter(prefix, null, "count", stats.getIngestCount());
+        this.sendCounter(prefix, null, "time_in_millis", stats.getIngestTimeInMillis());
+        this.sendGauge(prefix, null, "current", stats.getIngestCurrent());
+        this.sendCounter(prefix, null, "failed", stats.getIngestFailedCount());
+    }
+
+    private void sendNodeDiscoveryStats(DiscoveryStats discoveryStats) {
+        if (discoveryStats == null || discoveryStats.getQueueStats() == null) {
+            return;
+        }
+        StatsdMetricScope prefix = this.getScope("discovery");
+        this.sendGauge(prefix, "cluster_state_queue", "total", discoveryStats.getQueueStats().getTotal());
+        this.sendGauge(prefix, "cluster_state_queue", "pending", discoveryStats.getQueueStats().getPending());
+        this.sendGauge(prefix, "cluster_state_queue", "committed", discoveryStats.getQueueStats().getCommitted());
     }
 
     private void sendNodeHttpStats(HttpStats httpStats) {
         if( httpStats != null ) {
-            String prefix = this.getPrefix("http");
-            this.sendGauge(prefix, "current_open", httpStats.getServerOpen());
-            this.sendGauge(prefix, "total_opened", httpStats.getTotalOpen());
+            StatsdMetricScope prefix = this.getScope("http");
+            this.sendGauge(prefix, null, "current_open", httpStats.getServerOpen());
+            this.sendCounter(prefix, null, "total_opened", httpStats.getTotalOpen());
         }
     }
 
     private void sendNodeFsStats(FsInfo fs) {
         // Send total
-        String prefix = this.getPrefix("fs");
-        this.sendNodeFsStatsInfo(prefix + ".total", fs.getTotal());
+        this.sendNodeFsStatsInfo("fs.total", fs.getTotal());
 
         // Maybe send details
         if (this.statsdReportFsDetails) {
             Iterator<FsInfo.Path> infoIterator = fs.iterator();
             while (infoIterator.hasNext()) {
                 FsInfo.Path info = infoIterator.next();
-                this.sendNodeFsStatsInfo(prefix + ".data", info);
+                this.sendNodeFsStatsInfo("fs.data", info);
             }
         }
     }
 
-    private void sendNodeFsStatsInfo(String prefix, FsInfo.Path info) {
-        // Construct detailed path
-        String prefixAppend = "";
-        if (info.getPath() != null)
-            prefixAppend += "." + info.getPath();
-        if (info.getMount() != null)
-            prefixAppend += "." + info.getMount();
+    private void sendNodeFsStatsInfo(String family, FsInfo.Path info) {
+        // Detailed path, as dimensions of the scope
+        StatsdMetricScope prefix = this.nameCache.nodeScope(this.nodeName, family, "path", info.getPath(), "mount", info.getMount());
 
         if (info.getAvailable().getBytes() != -1)
-            this.sendGauge(prefix + prefixAppend, "available_in_bytes", info.getAvailable().getBytes());
+            this.sendGauge(prefix, null, "available_in_bytes", info.getAvailable().getBytes());
         if (info.getTotal().getBytes() != -1)
-            this.sendGauge(prefix + prefixAppend, "total_in_bytes", info.getTotal().getBytes());
+            this.sendGauge(prefix, null, "total_in_bytes", info.getTotal().getBytes());
         if (info.getFree().getBytes() != -1)
-            this.sendGauge(prefix + prefixAppend, "free_in_bytes", info.getFree().getBytes());
+            this.sendGauge(prefix, null, "free_in_bytes", info.getFree().getBytes());
+    }
+
+    private boolean reports(String family) {
+        return this.getScope(family).reports();
+    }
+
+    private StatsdMetricScope getScope(String family) {
+        return this.nameCache.nodeScope(this.nodeName, family);
     }
 
-    private String getPrefix(String prefix) {
-        return this.buildMetricName("node." + this.nodeName + "." + prefix);
+    private StatsdMetricScope getScope(String family, String dimension, String value) {
+        return this.nameCache.nodeScope(this.nodeName, family, dimension, value);
     }
 }
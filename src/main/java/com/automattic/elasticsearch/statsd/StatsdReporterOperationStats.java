@@ -0,0 +1,70 @@
+package com.automattic.elasticsearch.statsd;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+
+/**
+ * Reports the latency percentiles of the operations executed on the local node since the previous cycle, for the
+ * node and per index, and the number of operations slower than the configured thresholds since the previous cycle as
+ * StatsD counters, whatever the counter mode. Latencies and slow counts without any operations in the cycle are
+ * skipped.
+ */
+public class StatsdReporterOperationStats extends StatsdReporter {
+
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final StatsdOperationStats operationStats;
+    private final String nodeName;
+
+    public StatsdReporterOperationStats(StatsdOperationStats operationStats, String nodeName, StatsdMetricNameCache nameCache) {
+        super(nameCache);
+        this.operationStats = operationStats;
+        this.nodeName = nodeName;
+    }
+
+    public void run() {
+        try {
+            this.sendLatencies(this.nameCache.nodeScope(this.nodeName, "latency"), this.operationStats.getNodeStats());
+
+            for (Map.Entry<String, StatsdOperationStats.Stats> index : this.operationStats.getIndexStats().entrySet()) {
+                this.sendLatencies(
+                        this.nameCache.nodeScope(this.nodeName, "latency.index", StatsdMetricNameCache.INDEX_DIMENSION, index.getKey()),
+                        index.getValue()
+                );
+            }
+        } catch (Exception e) {
+            this.logException(e);
+        }
+    }
+
+    private void sendLatencies(StatsdMetricScope prefix, StatsdOperationStats.Stats stats) {
+        for (StatsdOperationStats.Operation operation : StatsdOperationStats.Operation.values()) {
+            String group = operation.getStatName();
+            StatsdOperationStats.SlowThresholds thresholds = this.operationStats.getSlowThresholds(operation);
+            if (thresholds != null && prefix.reports(group)) {
+                for (int i = 0; i < thresholds.size(); i++) {
+                    long slow = stats.takeSlowCount(operation, i);
+                    if (slow > 0) {
+                        this.sendCount(prefix, group, thresholds.getStatName(i), slow);
+                    }
+                }
+            }
+
+            if (stats.getLatency(operation) == null) {
+                continue;
+            }
+            // the interval is consumed even if not reported, so the next cycle does not include it
+            Histogram latency = stats.getLatency(operation).intervalHistogram();
+            if (latency.getTotalCount() == 0 || !prefix.reports(group)) {
+                continue;
+            }
+
+            this.sendGauge(prefix, group, "count", latency.getTotalCount());
+            this.sendGauge(prefix, group, "p50_in_millis", latency.getValueAtPercentile(50) / MICROS_PER_MILLI);
+            this.sendGauge(prefix, group, "p95_in_millis", latency.getValueAtPercentile(95) / MICROS_PER_MILLI);
+            this.sendGauge(prefix, group, "p99_in_millis", latency.getValueAtPercentile(99) / MICROS_PER_MILLI);
+            this.sendGauge(prefix, group, "max_in_millis", latency.getMaxValue() / MICROS_PER_MILLI);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.automattic.elasticsearch.statsd;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Reports the metrics registered in the {@link StatsdMetricsRegistry}. Timers without any recordings in the cycle
+ * only report their count.
+ */
+public class StatsdReporterRegistry extends StatsdReporter {
+
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final StatsdMetricsRegistry registry;
+    private final String nodeName;
+
+    public StatsdReporterRegistry(StatsdMetricsRegistry registry, String nodeName, StatsdMetricNameCache nameCache) {
+        super(nameCache);
+        this.registry = registry;
+        this.nodeName = nodeName;
+    }
+
+    public void run() {
+        try {
+            StatsdMetricScope prefix = this.nameCache.nodeScope(this.nodeName, "custom");
+            for (StatsdMetricsRegistry.Metric metric : this.registry.getMetrics().values()) {
+                try {
+                    this.sendMetric(prefix, metric);
+                } catch (Exception e) {
+                    // a failing gauge supplier must not take the other metrics down
+                    this.logException(e);
+                }
+            }
+        } catch (Exception e) {
+            this.logException(e);
+        }
+    }
+
+    private void sendMetric(StatsdMetricScope prefix, StatsdMetricsRegistry.Metric metric) {
+        if (metric instanceof StatsdMetricsRegistry.Counter) {
+            this.sendCounter(prefix, null, metric.getName(), ((StatsdMetricsRegistry.Counter) metric).getCount());
+        } else if (metric instanceof StatsdMetricsRegistry.Gauge) {
+            this.sendGauge(prefix, null, metric.getName(), ((StatsdMetricsRegistry.Gauge) metric).getValue());
+        } else if (metric instanceof StatsdMetricsRegistry.Timer) {
+            // the interval is consumed even if not reported, so the next cycle does not include it
+            Histogram latency = ((StatsdMetricsRegistry.Timer) metric).getLatency().intervalHistogram();
+            String group = metric.getName();
+            if (!prefix.reports(group)) {
+                return;
+            }
+            this.sendGauge(prefix, group, "count", latency.getTotalCount());
+            if (latency.getTotalCount() > 0) {
+                this.sendGauge(prefix, group, "p50_in_millis", latency.getValueAtPercentile(50) / MICROS_PER_MILLI);
+                this.sendGauge(prefix, group, "p95_in_millis", latency.getValueAtPercentile(95) / MICROS_PER_MILLI);
+                this.sendGauge(prefix, group, "p99_in_millis", latency.getValueAtPercentile(99) / MICROS_PER_MILLI);
+                this.sendGauge(prefix, group, "max_in_millis", latency.getMaxValue() / MICROS_PER_MILLI);
+            }
+        }
+    }
+}
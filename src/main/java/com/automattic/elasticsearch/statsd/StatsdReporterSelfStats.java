@@ -0,0 +1,44 @@
+package com.automattic.elasticsearch.statsd;
+
+import java.util.Map;
+
+/**
+ * Reports the health of the plugin itself: what went through the send queue and how often each reporter fell behind
+ * its interval.
+ */
+public class StatsdReporterSelfStats extends StatsdReporter {
+
+    private final StatsdQueueingTransport transport;
+    private final Map<String, Long> reporterOverruns;
+    private final String nodeName;
+
+    public StatsdReporterSelfStats(StatsdQueueingTransport transport, Map<String, Long> reporterOverruns,
+                                   String nodeName, StatsdMetricNameCache nameCache) {
+        super(nameCache);
+        this.transport = transport;
+        this.reporterOverruns = reporterOverruns;
+        this.nodeName = nodeName;
+    }
+
+    public void run() {
+        try {
+            StatsdMetricScope prefix = this.nameCache.nodeScope(this.nodeName, "statsd_plugin");
+            this.sendCounter(prefix, null, "enqueued_metrics", this.transport.getEnqueuedMetrics());
+            this.sendCounter(prefix, null, "sent_metrics", this.transport.getSentMetrics());
+            this.sendCounter(prefix, null, "dropped_metrics", this.transport.getDroppedMetrics());
+            this.sendCounter(prefix, null, "sent_bytes", this.transport.getSentBytes());
+            this.sendCounter(prefix, null, "sent_packets", this.transport.getSentPackets());
+            this.sendCounter(prefix, null, "send_errors", this.transport.getSendErrors());
+            this.sendGauge(prefix, null, "queue_size", this.transport.getQueueSize());
+
+            for (Map.Entry<String, Long> overruns : this.reporterOverruns.entrySet()) {
+                this.sendCounter(
+                        this.nameCache.nodeScope(this.nodeName, "statsd_plugin.reporter", "reporter", overruns.getKey()),
+                        null, "overruns", overruns.getValue()
+                );
+            }
+        } catch (Exception e) {
+            this.logException(e);
+        }
+    }
+}
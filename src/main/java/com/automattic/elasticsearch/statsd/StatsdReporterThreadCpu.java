@@ -0,0 +1,34 @@
+package com.automattic.elasticsearch.statsd;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports the CPU usage of the threads of the local node by thread pool.
+ */
+public class StatsdReporterThreadCpu extends StatsdReporter {
+
+    private final StatsdThreadCpuSampler sampler;
+    private final String nodeName;
+
+    public StatsdReporterThreadCpu(StatsdThreadCpuSampler sampler, String nodeName, StatsdMetricNameCache nameCache) {
+        super(nameCache);
+        this.sampler = sampler;
+        this.nodeName = nodeName;
+    }
+
+    public void run() {
+        try {
+            if (!this.nameCache.nodeScope(this.nodeName, "thread_cpu").reports()) {
+                return;
+            }
+            for (Map.Entry<String, StatsdThreadCpuSampler.Interval> pool : this.sampler.nextInterval().entrySet()) {
+                StatsdMetricScope prefix = this.nameCache.nodeScope(this.nodeName, "thread_cpu", "thread_pool", pool.getKey());
+                this.sendGauge(prefix, null, "percent", pool.getValue().getPercent());
+                this.sendCounter(prefix, null, "total_in_millis", TimeUnit.NANOSECONDS.toMillis(pool.getValue().getTotalNanos()));
+            }
+        } catch (Exception e) {
+            this.logException(e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.automattic.elasticsearch.statsd;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lets only one asynchronous request run at a time, so a slow cluster does not pile up stats requests. A request
+ * completes exactly once, by its response, its failure or its timeout, whichever comes first. Releasing a request
+ * lets the next one start, a timed out request that responds late can neither complete nor release its successor.
+ */
+public class StatsdRequestGate {
+
+    private final AtomicReference<Request> inFlight = new AtomicReference<>();
+
+    /**
+     * @return the started request, or null while another request is in flight
+     */
+    public Request tryStart() {
+        Request request = new Request();
+        return this.inFlight.compareAndSet(null, request) ? request : null;
+    }
+
+    public boolean isInFlight() {
+        return this.inFlight.get() != null;
+    }
+
+    public class Request {
+
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+
+        /**
+         * @return whether this call completed the request, false if it was completed before, e.g. by its timeout
+         */
+        public boolean complete() {
+            return this.completed.compareAndSet(false, true);
+        }
+
+        /**
+         * Lets the next request start, unless another one started already.
+         */
+        public void release() {
+            StatsdRequestGate.this.inFlight.compareAndSet(this, null);
+        }
+    }
+}
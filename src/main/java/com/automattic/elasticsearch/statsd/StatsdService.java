@@ -1,13 +1,16 @@
 package com.automattic.elasticsearch.statsd;
 
 import com.automattic.elasticsearch.plugin.StatsdPlugin;
-import com.timgroup.statsd.NonBlockingStatsDClient;
-import com.timgroup.statsd.StatsDClient;
+import com.timgroup.statsd.StatsDClientException;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.SpecialPermission;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.admin.indices.stats.CommonStatsFlags;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
+import org.elasticsearch.action.support.ThreadedActionListener;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.ClusterStateListener;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.Strings;
@@ -17,77 +20,264 @@ import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.discovery.Discovery;
+import org.elasticsearch.http.HttpStats;
+import org.elasticsearch.index.Index;
 import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.monitor.MonitorService;
+import org.elasticsearch.node.Node;
 import org.elasticsearch.node.NodeService;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
 
+import java.io.IOException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class StatsdService extends AbstractLifecycleComponent {
 
+    public enum IndicesMode {
+        /**
+         * The elected master requests the cluster wide stats and reports the totals, indices and shards
+         */
+        MASTER,
+        /**
+         * Every data node reports its local primary shards, totals have to be summed up downstream
+         */
+        LOCAL;
+
+        public static IndicesMode parse(String mode) {
+            try {
+                return IndicesMode.valueOf(mode.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown indices mode [" + mode + "], expected one of [master, local]");
+            }
+        }
+    }
+
     private final Client client;
     private final ClusterService clusterService;
     private final IndicesService indicesService;
     private final NodeService nodeService;
+    private final MonitorService monitorService;
+    private final TransportService transportService;
+    private final CircuitBreakerService circuitBreakerService;
+    private final Discovery discovery;
+    private final StatsdOperationStats operationStats;
+    private final StatsdMetricsRegistry metricsRegistry;
+    private final ThreadPool threadPool;
     private final String statsdHost;
     private final Integer statsdPort;
-    private final TimeValue statsdRefreshInternal;
+    private final Integer statsdMaxPacketBytes;
+    private final StatsdTransport.Type statsdTransport;
+    private final int statsdQueueSize;
+    private final TimeValue statsdNodeStatsInterval;
+    private final TimeValue statsdNodeIndicesStatsInterval;
+    private final TimeValue statsdIndicesStatsInterval;
+    private final TimeValue statsdIndicesStatsTimeout;
+    private final TimeValue statsdNodeProbeCache;
+    private final TimeValue statsdThreadPoolSampleInterval;
+    private final TimeValue statsdThreadCpuSampleInterval;
+    private final IndicesMode statsdIndicesMode;
     private final String statsdPrefix;
     private final String statsdNodeName;
     private final boolean statsdReportNodeIndices;
     private final boolean statsdReportIndices;
     private final boolean statsdReportShards;
     private final boolean statsdReportFsDetails;
+    private final boolean statsdReportTranslog;
+    private final boolean statsdReportRecovery;
+    private final boolean statsdReportBufferPools;
+    private final boolean statsdReportBreakers;
+    private final boolean statsdReportIngest;
+    private final boolean statsdReportDiscovery;
     private final boolean statsdSendHttpStats;
-    private final StatsDClient statsdClient;
+    private final boolean statsdSendUnchanged;
+    private final int statsdHeartbeatCycles;
+    private final StatsdCounterTracker.Mode statsdCounterMode;
+    private final StatsdMetricNameCache statsdNameCache;
+    private final StatsdTopIndices statsdTopIndices;
+    private final StatsdShardActivity statsdShardActivity;
+    private final StatsdIndexGroups statsdIndexGroups;
+    private final ClusterStateListener statsdNameCacheEvictor;
+    private final StatsdQueueingTransport statsdSender;
+    private final StatsdThreadPoolSampler statsdThreadPoolSampler;
+    private final StatsdThreadCpuSampler statsdThreadCpuSampler;
+    private final StatsdGcStats statsdGcStats;
 
-    private final Thread statsdReporterThread;
+    private final List<StatsdReporterTask> statsdReporters = new ArrayList<>();
+    private final List<StatsdFixedRateTask> statsdReporterTasks = new ArrayList<>();
+    private final ScheduledExecutorService statsdScheduler;
+    private ScheduledFuture<?> statsdThreadPoolSampling;
+    private ScheduledFuture<?> statsdThreadCpuSampling;
     private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final StatsdRequestGate indicesStatsRequests = new StatsdRequestGate();
 
     @Inject
-    public StatsdService(Settings settings, Client client, ClusterService clusterService, IndicesService indicesService, NodeService nodeService) {
+    public StatsdService(Settings settings, Client client, ClusterService clusterService, IndicesService indicesService, NodeService nodeService,
+                         MonitorService monitorService, TransportService transportService, CircuitBreakerService circuitBreakerService,
+                         Discovery discovery, StatsdOperationStats operationStats, StatsdMetricsRegistry metricsRegistry,
+                         ThreadPool threadPool) {
         super(settings);
         this.client = client;
         this.clusterService = clusterService;
         this.indicesService = indicesService;
         this.nodeService = nodeService;
-        this.statsdRefreshInternal = StatsdPlugin.EVERY_S.get(settings);
+        this.monitorService = monitorService;
+        this.transportService = transportService;
+        this.circuitBreakerService = circuitBreakerService;
+        this.discovery = discovery;
+        this.operationStats = operationStats;
+        this.metricsRegistry = metricsRegistry;
+        this.threadPool = threadPool;
+        this.statsdNodeStatsInterval = StatsdPlugin.NODE_EVERY_S.get(settings);
+        this.statsdNodeIndicesStatsInterval = StatsdPlugin.NODE_INDICES_EVERY_S.get(settings);
+        this.statsdIndicesStatsInterval = StatsdPlugin.INDICES_EVERY_S.get(settings);
+        this.statsdIndicesStatsTimeout = StatsdPlugin.INDICES_STATS_TIMEOUT_S.get(settings);
+        this.statsdNodeProbeCache = StatsdPlugin.NODE_PROBE_CACHE_S.get(settings);
+        this.statsdThreadPoolSampleInterval = StatsdPlugin.THREAD_POOL_SAMPLE_EVERY_S.get(settings);
+        this.statsdThreadCpuSampleInterval = StatsdPlugin.THREAD_CPU_SAMPLE_EVERY_S.get(settings);
         this.statsdHost = StatsdPlugin.HOST_S.get(settings);
         this.statsdPort = StatsdPlugin.PORT_S.get(settings);
+        this.statsdMaxPacketBytes = StatsdPlugin.MAX_PACKET_BYTES_S.get(settings);
+        this.statsdTransport = StatsdPlugin.TRANSPORT_S.get(settings);
+        this.statsdQueueSize = StatsdPlugin.QUEUE_SIZE_S.get(settings);
+        this.statsdIndicesMode = StatsdPlugin.INDICES_MODE_S.get(settings);
         this.statsdPrefix = Arrays.asList(StatsdPlugin.PREFIX_S.get(settings), "elasticsearch" + "." + settings.get("cluster.name")).stream().filter(s -> s.length() > 0).findFirst().get();
-        this.statsdNodeName = StatsdPlugin.NODE_NAME_S.get(settings);
+        String statsdNodeName = StatsdPlugin.NODE_NAME_S.get(settings);
+        // the node name is added to the settings before the plugin services are created
+        this.statsdNodeName = Strings.isNullOrEmpty(statsdNodeName) ? Node.NODE_NAME_SETTING.get(settings) : statsdNodeName;
         this.statsdReportNodeIndices = StatsdPlugin.REPORT_NODE_INDICES_S.get(settings);
         this.statsdReportIndices = StatsdPlugin.REPORT_INDICES_S.get(settings);
         this.statsdReportShards = StatsdPlugin.REPORT_SHARDS_S.get(settings);
         this.statsdReportFsDetails = StatsdPlugin.REPORT_FS_DETAILS_S.get(settings);
+        this.statsdReportTranslog = StatsdPlugin.REPORT_TRANSLOG_S.get(settings);
+        this.statsdReportRecovery = StatsdPlugin.REPORT_RECOVERY_S.get(settings);
+        this.statsdReportBufferPools = StatsdPlugin.REPORT_BUFFER_POOLS_S.get(settings);
+        this.statsdReportBreakers = StatsdPlugin.REPORT_BREAKERS_S.get(settings);
+        this.statsdReportIngest = StatsdPlugin.REPORT_INGEST_S.get(settings);
+        this.statsdReportDiscovery = StatsdPlugin.REPORT_DISCOVERY_S.get(settings);
         this.statsdSendHttpStats = !StatsdPlugin.TEST_MODE_S.get(settings);
+        this.statsdSendUnchanged = StatsdPlugin.SEND_UNCHANGED_S.get(settings);
+        this.statsdHeartbeatCycles = StatsdPlugin.HEARTBEAT_CYCLES_S.get(settings);
+        this.statsdCounterMode = StatsdPlugin.COUNTER_MODE_S.get(settings);
+        this.statsdNameCache = new StatsdMetricNameCache(
+                StatsdPlugin.FORMAT_S.get(settings),
+                StatsdMetricFilter.build(
+                        StatsdPlugin.INCLUDE_S.get(settings),
+                        StatsdPlugin.EXCLUDE_S.get(settings),
+                        StatsdPlugin.INDICES_INCLUDE_S.get(settings),
+                        StatsdPlugin.INDICES_EXCLUDE_S.get(settings)
+                )
+        );
+        int statsdTopIndices = StatsdPlugin.INDICES_TOP_S.get(settings);
+        this.statsdTopIndices = statsdTopIndices == 0
+                ? null
+                : new StatsdTopIndices(statsdTopIndices, StatsdPlugin.INDICES_TOP_BY_S.get(settings));
+        this.statsdIndexGroups = StatsdIndexGroups.build(StatsdPlugin.INDEX_GROUPS_S.get(settings));
+        int statsdShardsIdleCycles = StatsdPlugin.SHARDS_IDLE_CYCLES_S.get(settings);
+        this.statsdShardActivity = statsdShardsIdleCycles == 1 ? null : new StatsdShardActivity(statsdShardsIdleCycles);
+        this.statsdNameCacheEvictor = event -> {
+            for (Index index : event.indicesDeleted()) {
+                this.statsdNameCache.evictIndex(index.getName());
+                if (this.statsdIndexGroups != null) {
+                    this.statsdIndexGroups.evictIndex(index.getName());
+                }
+                if (this.statsdShardActivity != null) {
+                    this.statsdShardActivity.evictIndex(index.getName());
+                }
+            }
+        };
 
         SecurityManager sm = System.getSecurityManager();
         if (sm != null) {
             // unprivileged code such as scripts do not have SpecialPermission
             sm.checkPermission(new SpecialPermission());
         }
-        this.statsdClient = AccessController.doPrivileged(new PrivilegedAction<StatsDClient>() {
-            @Override
-            public StatsDClient run() {
-                return new NonBlockingStatsDClient(StatsdService.this.statsdPrefix, StatsdService.this.statsdHost, StatsdService.this.statsdPort);
-            }
-        });
 
-        this.statsdReporterThread = EsExecutors
-                .daemonThreadFactory(this.settings, "statsd_reporter")
-                .newThread(new StatsdReporterThread());
+        // All reporters hand their packets to a single sender thread through a bounded queue
+        this.statsdSender = this.newStatsdSender();
+
+        this.statsdThreadPoolSampler = this.statsdThreadPoolSampleInterval.millis() > 0
+                ? new StatsdThreadPoolSampler(this.threadPool::stats)
+                : null;
+        if (this.statsdThreadCpuSampleInterval.millis() > 0 && !StatsdThreadCpuSampler.isSupported()) {
+            this.logger.warn("Thread CPU time is not supported or disabled by the JVM, not sampling the CPU time of the thread pools");
+        }
+        this.statsdThreadCpuSampler = this.statsdThreadCpuSampleInterval.millis() > 0 && StatsdThreadCpuSampler.isSupported()
+                ? new StatsdThreadCpuSampler()
+                : null;
+
+        this.statsdGcStats = StatsdPlugin.REPORT_GC_PAUSES_S.get(settings) ? new StatsdGcStats() : null;
+
+        // Every family runs on its own interval with its own client and trackers, so a slow family never delays
+        // the others and suppression / deltas are computed per family cycle
+        this.statsdReporters.add(new NodeStatsReporterTask("node", this.statsdNodeStatsInterval));
+        if (this.statsdReportNodeIndices) {
+            this.statsdReporters.add(new NodeIndicesStatsReporterTask("node_indices", this.statsdNodeIndicesStatsInterval));
+        }
+        this.statsdReporters.add(new IndicesStatsReporterTask("indices", this.statsdIndicesStatsInterval));
+
+        this.statsdScheduler = new ScheduledThreadPoolExecutor(
+                this.statsdReporters.size()
+                        + (this.statsdThreadPoolSampler == null ? 0 : 1)
+                        + (this.statsdThreadCpuSampler == null ? 0 : 1),
+                EsExecutors.daemonThreadFactory(this.settings, "statsd_reporter")
+        );
+        for (StatsdReporterTask reporter : this.statsdReporters) {
+            reporter.task = new StatsdFixedRateTask(
+                    this.statsdScheduler,
+                    reporter.interval,
+                    reporter,
+                    this.logger
+            );
+            this.statsdReporterTasks.add(reporter.task);
+        }
     }
 
     @Override
     protected void doStart() throws ElasticsearchException {
         if (this.statsdHost != null && this.statsdHost.length() > 0) {
-            this.statsdReporterThread.start();
+            this.clusterService.addListener(this.statsdNameCacheEvictor);
+            this.statsdSender.start();
+            for (StatsdFixedRateTask task : this.statsdReporterTasks) {
+                task.start();
+            }
+            if (this.statsdThreadPoolSampler != null) {
+                this.statsdThreadPoolSampling = this.statsdScheduler.scheduleWithFixedDelay(
+                        this::sampleThreadPools,
+                        0,
+                        this.statsdThreadPoolSampleInterval.millis(),
+                        TimeUnit.MILLISECONDS
+                );
+            }
+            if (this.statsdGcStats != null) {
+                this.statsdGcStats.start();
+            }
+            if (this.statsdThreadCpuSampler != null) {
+                this.statsdThreadCpuSampling = this.statsdScheduler.scheduleWithFixedDelay(
+                        this::sampleThreadCpu,
+                        0,
+                        this.statsdThreadCpuSampleInterval.millis(),
+                        TimeUnit.MILLISECONDS
+                );
+            }
             this.logger.info(
-                    "StatsD reporting triggered every [{}] to host [{}:{}] with metric prefix [{}]",
-                    this.statsdRefreshInternal, this.statsdHost, this.statsdPort, this.statsdPrefix
+                    "StatsD reporting triggered every [{}] for node stats, [{}] for node indices stats and [{}] for indices stats to host [{}:{}] over [{}] with metric prefix [{}]",
+                    this.statsdNodeStatsInterval, this.statsdNodeIndicesStatsInterval, this.statsdIndicesStatsInterval,
+                    this.statsdHost, this.statsdPort, this.statsdTransport, this.statsdPrefix
             );
         } else {
             this.logger.error(
@@ -104,111 +294,459 @@ public class StatsdService extends AbstractLifecycleComponent {
     @Override
     protected void doClose() throws ElasticsearchException {
         if(this.closed.compareAndSet(false, true)) {
-            this.statsdReporterThread.interrupt();
+            this.clusterService.removeListener(this.statsdNameCacheEvictor);
+            for (StatsdFixedRateTask task : this.statsdReporterTasks) {
+                task.cancel();
+            }
+            if (this.statsdThreadPoolSampling != null) {
+                this.statsdThreadPoolSampling.cancel(false);
+            }
+            if (this.statsdThreadCpuSampling != null) {
+                this.statsdThreadCpuSampling.cancel(false);
+            }
+            if (this.statsdGcStats != null) {
+                this.statsdGcStats.stop();
+            }
+            this.statsdScheduler.shutdownNow();
+            for (StatsdReporterTask reporter : this.statsdReporters) {
+                reporter.statsdClient.flush();
+            }
+            try {
+                this.statsdSender.close();
+            } catch (IOException e) {
+                this.logger.debug("Unable to close the StatsD transport", e);
+            }
             this.logger.info("StatsD reporter stopped");
         }
     }
 
-    public class StatsdReporterThread implements Runnable {
+    /**
+     * Never throws, an exception would cancel all following samples.
+     */
+    private void sampleThreadPools() {
+        try {
+            this.statsdThreadPoolSampler.run();
+        } catch (Exception e) {
+            this.logger.debug("Unable to sample the thread pools", e);
+        }
+    }
+
+    /**
+     * Never throws, an exception would cancel all following samples.
+     */
+    private void sampleThreadCpu() {
+        try {
+            this.statsdThreadCpuSampler.run();
+        } catch (Exception e) {
+            this.logger.debug("Unable to sample the CPU time of the threads", e);
+        }
+    }
+
+    private StatsdQueueingTransport newStatsdSender() {
+        return AccessController.doPrivileged(new PrivilegedAction<StatsdQueueingTransport>() {
+            @Override
+            public StatsdQueueingTransport run() {
+                StatsdTransport transport;
+                try {
+                    transport = StatsdService.this.statsdTransport.open(StatsdService.this.statsdHost, StatsdService.this.statsdPort);
+                } catch (IOException e) {
+                    throw new StatsDClientException("Failed to start StatsD client", e);
+                }
+                return new StatsdQueueingTransport(
+                        transport,
+                        StatsdService.this.statsdQueueSize,
+                        StatsdService.this.statsdMaxPacketBytes,
+                        EsExecutors.daemonThreadFactory(StatsdService.this.settings, "statsd_sender"),
+                        e -> StatsdService.this.logger.debug("Unable to send metrics to StatsD", e)
+                );
+            }
+        });
+    }
+
+    private BatchingStatsDClient newStatsdClient(StatsdChangeTracker changeTracker, StatsdCounterTracker counterTracker) {
+        return new BatchingStatsDClient(
+                this.statsdPrefix,
+                this.statsdSender,
+                this.statsdMaxPacketBytes,
+                e -> this.logger.debug("Unable to send metrics to StatsD", e),
+                changeTracker,
+                counterTracker
+        );
+    }
+
+    /**
+     * One family of stats reported on its own interval.
+     */
+    private abstract class StatsdReporterTask implements Runnable {
+
+        protected final String name;
+        protected final TimeValue interval;
+        protected final StatsdChangeTracker changeTracker;
+        protected final StatsdCounterTracker counterTracker;
+        protected final BatchingStatsDClient statsdClient;
+        private final StatsdMetricScope timerScope;
+        private StatsdFixedRateTask task;
+
+        StatsdReporterTask(String name, TimeValue interval) {
+            this.name = name;
+            this.interval = interval;
+            this.changeTracker = StatsdService.this.statsdSendUnchanged
+                    ? null
+                    : new StatsdChangeTracker(StatsdService.this.statsdHeartbeatCycles);
+            this.counterTracker = StatsdService.this.statsdCounterMode == StatsdCounterTracker.Mode.GAUGE
+                    ? null
+                    : new StatsdCounterTracker(StatsdService.this.statsdCounterMode);
+            this.statsdClient = StatsdService.this.newStatsdClient(this.changeTracker, this.counterTracker);
+            this.timerScope = StatsdService.this.statsdNameCache.nodeScope(
+                    StatsdService.this.statsdNodeName, "statsd_plugin.reporter", "reporter", name
+            );
+        }
 
         @Override
         public void run() {
+            ClusterState state = StatsdService.this.clusterService.state();
+            boolean isClusterStarted = StatsdService.this.clusterService
+                    .lifecycleState()
+                    .equals(Lifecycle.State.STARTED);
+
+            if(isClusterStarted) {
+                DiscoveryNode node = StatsdService.this.clusterService.localNode();
+
+                if (node != null && state != null) {
+                    if (this.reportsAsynchronously()) {
+                        this.report(state, node, StatsdService.this.statsdNodeName);
+                        return;
+                    }
+                    this.nextCycle();
+                    long start = System.nanoTime();
+                    this.report(state, node, StatsdService.this.statsdNodeName);
+                    this.sendCycleTime("cycle_time_in_millis", start);
+                }
+            }
+        }
+
+        protected abstract void report(ClusterState state, DiscoveryNode node, String statsdNodeName);
+
+        /**
+         * Whether {@link #report} only starts the cycle and finishes it on another thread. Such a task starts the
+         * cycle with {@link #nextCycle()} and flushes the client itself once it actually reports, so the client and
+         * trackers are only used by one thread at a time and skipped runs do not count as cycles.
+         */
+        protected boolean reportsAsynchronously() {
+            return false;
+        }
+
+        /**
+         * Starts a new reporting cycle of the trackers.
+         */
+        protected void nextCycle() {
+            if (this.changeTracker != null) {
+                this.changeTracker.nextCycle();
+            }
+            if (this.counterTracker != null) {
+                this.counterTracker.nextCycle();
+            }
+        }
+
+        /**
+         * Sends the time since {@code startNanos} as a timer, so StatsD turns the cycles into a histogram, and
+         * flushes the client.
+         */
+        protected void sendCycleTime(String valueName, long startNanos) {
+            this.statsdClient.time(
+                    this.timerScope,
+                    StatsdService.this.statsdNameCache.statKey(null, valueName),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)
+            );
+            this.statsdClient.flush();
+        }
+    }
+
+    /**
+     * Node stats -- runs for all nodes
+     */
+    private class NodeStatsReporterTask extends StatsdReporterTask {
+
+        private final StatsdNodeStatsCollector collector;
+
+        NodeStatsReporterTask(String name, TimeValue interval) {
+            super(name, interval);
+            MonitorService monitorService = StatsdService.this.monitorService;
+            this.collector = new StatsdNodeStatsCollector(
+                    monitorService.fsService()::stats,
+                    monitorService.jvmService()::stats,
+                    monitorService.osService()::stats,
+                    monitorService.processService()::stats,
+                    StatsdService.this.statsdSendHttpStats ? this::httpStats : null,
+                    StatsdService.this.transportService::stats,
+                    StatsdService.this.threadPool::stats,
+                    StatsdService.this.statsdReportBreakers ? StatsdService.this.circuitBreakerService::stats : null,
+                    StatsdService.this.statsdReportIngest
+                            ? StatsdService.this.nodeService.getIngestService().getPipelineExecutionService()::stats
+                            : null,
+                    StatsdService.this.statsdReportDiscovery ? StatsdService.this.discovery::stats : null,
+                    StatsdService.this.statsdNodeProbeCache
+            );
+        }
+
+        /**
+         * The HTTP transport is not bound if HTTP is disabled, so its stats are only available through the node
+         * service. Nothing else is collected.
+         */
+        private HttpStats httpStats() {
+            return StatsdService.this.nodeService.stats(
+                    new CommonStatsFlags().clear(),     // indices
+                    false,                              // os
+                    false,                              // process
+                    false,                              // jvm
+                    false,                              // threadPool
+                    false,                              // fs
+                    false,                              // transport
+                    true,                               // http
+                    false,                              // circuitBreaker
+                    false,                              // script,
+                    false,                              // discoveryStats
+                    false                               // ingest
+            ).getHttp();
+        }
+
+        @Override
+        protected void report(ClusterState state, DiscoveryNode node, String statsdNodeName) {
             try {
-                while (!StatsdService.this.closed.get()) {
-                    ClusterState state = StatsdService.this.clusterService.state();
-                    boolean isClusterStarted = StatsdService.this.clusterService
-                            .lifecycleState()
-                            .equals(Lifecycle.State.STARTED);
-
-
-                    if(isClusterStarted) {
-                        DiscoveryNode node = StatsdService.this.clusterService.localNode();
-
-                        if (node != null && state != null) {
-                            String statsdNodeName = StatsdService.this.statsdNodeName;
-                            if (Strings.isNullOrEmpty(statsdNodeName)) {
-                                statsdNodeName = node.getName();
-                            }
-
-                            // Report node stats -- runs for all nodes
-                            try {
-                                StatsdReporter nodeStatsReporter = new StatsdReporterNodeStats(
-                                        StatsdService.this.nodeService.stats(
-                                                new CommonStatsFlags().clear(),     // indices
-                                                true,                               // os
-                                                true,                               // process
-                                                true,                               // jvm
-                                                true,                               // threadPool
-                                                true,                               // fs
-                                                true,                               // transport
-                                                statsdSendHttpStats,                // http
-                                                true,                               // circuitBreaker
-                                                false,                              // script,
-                                                false,                              // discoveryStats
-                                                false                               // ingest
-                                        ),
-                                        statsdNodeName,
-                                        StatsdService.this.statsdReportFsDetails
-                                );
-                                nodeStatsReporter
-                                        .setStatsDClient(StatsdService.this.statsdClient)
-                                        .run();
-                            } catch (Exception e) {
-                                StatsdService.this.logger.error("Unable to send node stats", e);
-                            }
-
-                            // Maybe report index stats per node
-                            if (StatsdService.this.statsdReportNodeIndices && node.isDataNode()) {
-                                try {
-                                    StatsdReporter nodeIndicesStatsReporter = new StatsdReporterNodeIndicesStats(
-                                            StatsdService.this.indicesService.stats(
-                                                    false // includePrevious
-                                            ),
-                                            statsdNodeName
-                                    );
-                                    nodeIndicesStatsReporter
-                                            .setStatsDClient(StatsdService.this.statsdClient)
-                                            .run();
-                                } catch (Exception e) {
-                                    StatsdService.this.logger.error("Unable to send node indices stats", e);
-                                }
-                            }
-
-                            // Master node is the only one allowed to send cluster wide sums / stats
-                            if (state.nodes().isLocalNodeElectedMaster()) {
-                                try {
-                                    StatsdReporter indicesReporter = new StatsdReporterIndices(
-                                            StatsdService.this.client
-                                                    .admin()        // AdminClient
-                                                    .indices()      // IndicesAdminClient
-                                                    .prepareStats() // IndicesStatsRequestBuilder
-                                                    .all()          // IndicesStatsRequestBuilder
-                                                    .get(),         // IndicesStatsResponse
-                                            StatsdService.this.statsdReportIndices,
-                                            StatsdService.this.statsdReportShards
-                                    );
-                                    indicesReporter
-                                            .setStatsDClient(StatsdService.this.statsdClient)
-                                            .run();
-                                } catch (Exception e) {
-                                    StatsdService.this.logger.error("Unable to send cluster wide stats", e);
-                                }
-                            }
-                        }
+                StatsdReporter nodeStatsReporter = new StatsdReporterNodeStats(
+                        this.collector,
+                        StatsdService.this.statsdThreadPoolSampler,
+                        statsdNodeName,
+                        StatsdService.this.statsdReportFsDetails,
+                        StatsdService.this.statsdReportBufferPools,
+                        StatsdService.this.statsdNameCache
+                );
+                nodeStatsReporter
+                        .setStatsDClient(this.statsdClient)
+                        .run();
+            } catch (Exception e) {
+                StatsdService.this.logger.error("Unable to send node stats", e);
+            }
+
+            if (StatsdService.this.operationStats.isEnabled()) {
+                new StatsdReporterOperationStats(
+                        StatsdService.this.operationStats,
+                        statsdNodeName,
+                        StatsdService.this.statsdNameCache
+                )
+                        .setStatsDClient(this.statsdClient)
+                        .run();
+            }
+
+            if (!StatsdService.this.metricsRegistry.getMetrics().isEmpty()) {
+                new StatsdReporterRegistry(
+                        StatsdService.this.metricsRegistry,
+                        statsdNodeName,
+                        StatsdService.this.statsdNameCache
+                )
+                        .setStatsDClient(this.statsdClient)
+                        .run();
+            }
+
+            if (StatsdService.this.statsdGcStats != null) {
+                new StatsdReporterGcStats(
+                        StatsdService.this.statsdGcStats,
+                        statsdNodeName,
+                        StatsdService.this.statsdNameCache
+                )
+                        .setStatsDClient(this.statsdClient)
+                        .run();
+            }
+
+            if (StatsdService.this.statsdThreadCpuSampler != null) {
+                new StatsdReporterThreadCpu(
+                        StatsdService.this.statsdThreadCpuSampler,
+                        statsdNodeName,
+                        StatsdService.this.statsdNameCache
+                )
+                        .setStatsDClient(this.statsdClient)
+                        .run();
+            }
+
+            Map<String, Long> reporterOverruns = new LinkedHashMap<>();
+            for (StatsdReporterTask reporter : StatsdService.this.statsdReporters) {
+                reporterOverruns.put(reporter.name, reporter.task.getOverruns());
+            }
+            new StatsdReporterSelfStats(
+                    StatsdService.this.statsdSender,
+                    reporterOverruns,
+                    statsdNodeName,
+                    StatsdService.this.statsdNameCache
+            )
+                    .setStatsDClient(this.statsdClient)
+                    .run();
+        }
+    }
+
+    /**
+     * Index stats summed per node -- runs for data nodes
+     */
+    private class NodeIndicesStatsReporterTask extends StatsdReporterTask {
+
+        NodeIndicesStatsReporterTask(String name, TimeValue interval) {
+            super(name, interval);
+        }
+
+        @Override
+        protected void report(ClusterState state, DiscoveryNode node, String statsdNodeName) {
+            if (!node.isDataNode()) {
+                return;
+            }
+            try {
+                StatsdReporter nodeIndicesStatsReporter = new StatsdReporterNodeIndicesStats(
+                        StatsdService.this.indicesService.stats(
+                                false // includePrevious
+                        ),
+                        statsdNodeName,
+                        StatsdService.this.statsdReportRecovery,
+                        StatsdService.this.statsdNameCache
+                );
+                nodeIndicesStatsReporter
+                        .setStatsDClient(this.statsdClient)
+                        .run();
+            } catch (Exception e) {
+                StatsdService.this.logger.error("Unable to send node indices stats", e);
+            }
+        }
+    }
+
+    /**
+     * Index and shard stats -- runs on the elected master or, in local mode, on every data node
+     */
+    private class IndicesStatsReporterTask extends StatsdReporterTask {
+
+        IndicesStatsReporterTask(String name, TimeValue interval) {
+            super(name, interval);
+        }
+
+        /**
+         * The cluster wide stats are reported by the response listener, a cycle only counts once its response is
+         * reported. The shard activity counts the same cycles, so idle shards keep their counter baselines.
+         */
+        @Override
+        protected boolean reportsAsynchronously() {
+            return StatsdService.this.statsdIndicesMode != IndicesMode.LOCAL;
+        }
+
+        @Override
+        protected void report(ClusterState state, DiscoveryNode node, String statsdNodeName) {
+            if (StatsdService.this.statsdIndicesMode == IndicesMode.LOCAL) {
+                // Every data node reports its own shard copies
+                if (node.isDataNode()) {
+                    try {
+                        StatsdReporter localShardsReporter = new StatsdReporterLocalShards(
+                                StatsdService.this.indicesService,
+                                statsdNodeName,
+                                StatsdService.this.statsdReportTranslog,
+                                StatsdService.this.statsdReportRecovery,
+                                StatsdService.this.statsdShardActivity,
+                                StatsdService.this.statsdNameCache
+                        );
+                        localShardsReporter
+                                .setStatsDClient(this.statsdClient)
+                                .run();
+                    } catch (Exception e) {
+                        StatsdService.this.logger.error("Unable to send local shard stats", e);
                     }
+                }
+            } else if (state.nodes().isLocalNodeElectedMaster()) {
+                // Master node is the only one allowed to send cluster wide sums / stats
+                this.sendIndicesStats();
+            }
+        }
+
+        /**
+         * Requests the cluster wide stats asynchronously and reports them once they arrive, unless the previous
+         * request is still running. Responses arriving after the timeout are stale and dropped, the timeout lets the
+         * next run request the stats again.
+         */
+        private void sendIndicesStats() {
+            StatsdRequestGate.Request request = StatsdService.this.indicesStatsRequests.tryStart();
+            if (request == null) {
+                StatsdService.this.logger.debug("Skipping cluster wide stats, the previous request is still running");
+                return;
+            }
 
+            long start = System.nanoTime();
+            ScheduledFuture<?> timeout = StatsdService.this.threadPool.schedule(
+                    StatsdService.this.statsdIndicesStatsTimeout,
+                    ThreadPool.Names.SAME,
+                    () -> {
+                        if (request.complete()) {
+                            StatsdService.this.logger.warn(
+                                    "Unable to send cluster wide stats, no response within [{}]",
+                                    StatsdService.this.statsdIndicesStatsTimeout
+                            );
+                            request.release();
+                        }
+                    }
+            );
 
+            ActionListener<IndicesStatsResponse> listener = new ActionListener<IndicesStatsResponse>() {
+                @Override
+                public void onResponse(IndicesStatsResponse indicesStatsResponse) {
+                    if (!request.complete()) {
+                        return;
+                    }
                     try {
-                        Thread.sleep(StatsdService.this.statsdRefreshInternal.millis());
-                    } catch (InterruptedException e1) {
-                        continue;
+                        timeout.cancel(false);
+
+                        IndicesStatsReporterTask.this.nextCycle();
+                        StatsdReporter indicesReporter = new StatsdReporterIndices(
+                                indicesStatsResponse,
+                                StatsdService.this.statsdReportIndices,
+                                StatsdService.this.statsdReportShards,
+                                StatsdService.this.statsdTopIndices,
+                                StatsdService.this.statsdIndexGroups,
+                                StatsdService.this.statsdShardActivity,
+                                StatsdService.this.statsdNameCache
+                        );
+                        indicesReporter
+                                .setStatsDClient(IndicesStatsReporterTask.this.statsdClient)
+                                .run();
+                        IndicesStatsReporterTask.this.sendCycleTime("response_time_in_millis", start);
+                    } catch (Exception e) {
+                        StatsdService.this.logger.error("Unable to send cluster wide stats", e);
+                    } finally {
+                        request.release();
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    if (request.complete()) {
+                        timeout.cancel(false);
+                        StatsdService.this.logger.error("Unable to send cluster wide stats", e);
+                        request.release();
                     }
                 }
+            };
+
+            try {
+                StatsdService.this.client
+                        .admin()        // AdminClient
+                        .indices()      // IndicesAdminClient
+                        .stats(
+                                StatsdReporterIndices.indicesStatsRequest(
+                                        StatsdService.this.statsdReportTranslog,
+                                        StatsdService.this.statsdReportRecovery
+                                ),
+                                new ThreadedActionListener<>(
+                                        StatsdService.this.logger,
+                                        StatsdService.this.threadPool,
+                                        ThreadPool.Names.MANAGEMENT,
+                                        listener,
+                                        false
+                                )
+                        );
             } catch (Exception e) {
-                StatsdService.this.logger.error("Exception thrown from the event loop of StatsdReporterThread", e);
+                listener.onFailure(e);
             }
-
-            StatsdService.this.logger.error("Exiting StatsdReporterThread");
         }
     }
 }
@@ -0,0 +1,134 @@
+package com.automattic.elasticsearch.statsd;
+
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
+import org.elasticsearch.index.flush.FlushStats;
+import org.elasticsearch.index.get.GetStats;
+import org.elasticsearch.index.merge.MergeStats;
+import org.elasticsearch.index.refresh.RefreshStats;
+import org.elasticsearch.index.search.stats.SearchStats;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.IndexingStats;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Skips the shards which did not change since they were last reported, so the cost of the shard stats scales with
+ * the active shards instead of all shards. Whether a shard changed is decided by a cheap signal over its cumulative
+ * operation counters: indexing, deletes, searches, gets, refreshes, flushes and merges. Idle shards are still
+ * reported every {@code idleCycles} cycles, so their series do not end.
+ *
+ * Must only be used by one reporter at a time.
+ */
+public class StatsdShardActivity {
+
+    private final int idleCycles;
+    private final Map<String, Shard[]> indices = new HashMap<>();
+
+    /**
+     * @param idleCycles report idle shards every that many cycles, 1 to report every shard on every cycle
+     */
+    public StatsdShardActivity(int idleCycles) {
+        if (idleCycles < 1) {
+            throw new IllegalArgumentException("idleCycles must be positive but was " + idleCycles);
+        }
+        this.idleCycles = idleCycles;
+    }
+
+    /**
+     * Records the signal of a shard in this cycle and returns whether it should be reported.
+     */
+    public synchronized boolean shouldReport(String index, int shardId, long signal) {
+        Shard[] shards = this.indices.get(index);
+        if (shards == null || shardId >= shards.length) {
+            shards = shards == null ? new Shard[shardId + 1] : Arrays.copyOf(shards, shardId + 1);
+            this.indices.put(index, shards);
+        }
+        Shard shard = shards[shardId];
+        if (shard == null) {
+            shards[shardId] = new Shard(signal);
+            return true;
+        }
+
+        if (shard.signal != signal || ++shard.idleCycles >= this.idleCycles) {
+            shard.signal = signal;
+            shard.idleCycles = 0;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void evictIndex(String index) {
+        this.indices.remove(index);
+    }
+
+    /**
+     * The signal of stats already collected, e.g. from the indices stats response.
+     */
+    public static long signal(CommonStats stats) {
+        return signal(
+                stats.getIndexing(),
+                stats.getSearch(),
+                stats.getGet(),
+                stats.getRefresh(),
+                stats.getFlush(),
+                stats.getMerge()
+        );
+    }
+
+    /**
+     * The signal of a local shard from its in-memory counters only, without touching the store or segments.
+     */
+    public static long signal(IndexShard indexShard) {
+        return signal(
+                indexShard.indexingStats(),
+                indexShard.searchStats(),
+                indexShard.getStats(),
+                indexShard.refreshStats(),
+                indexShard.flushStats(),
+                indexShard.mergeStats()
+        );
+    }
+
+    private static long signal(IndexingStats indexing, SearchStats search, GetStats get, RefreshStats refresh,
+                               FlushStats flush, MergeStats merge) {
+        long signal = 0;
+        if (indexing != null) {
+            signal = mix(signal, indexing.getTotal().getIndexCount());
+            signal = mix(signal, indexing.getTotal().getDeleteCount());
+        }
+        if (search != null) {
+            signal = mix(signal, search.getTotal().getQueryCount());
+            signal = mix(signal, search.getTotal().getFetchCount());
+            signal = mix(signal, search.getTotal().getScrollCount());
+        }
+        if (get != null) {
+            signal = mix(signal, get.getCount());
+        }
+        if (refresh != null) {
+            signal = mix(signal, refresh.getTotal());
+        }
+        if (flush != null) {
+            signal = mix(signal, flush.getTotal());
+        }
+        if (merge != null) {
+            signal = mix(signal, merge.getTotal());
+        }
+        return signal;
+    }
+
+    private static long mix(long signal, long value) {
+        return 31 * signal + value;
+    }
+
+    private static final class Shard {
+
+        private long signal;
+        private int idleCycles;
+
+        Shard(long signal) {
+            this.signal = signal;
+        }
+    }
+}
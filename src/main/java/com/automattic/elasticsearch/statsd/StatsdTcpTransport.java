@@ -0,0 +1,110 @@
+package com.automattic.elasticsearch.statsd;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams packets over a persistent connection, terminating every packet with a newline. Packets are written
+ * without blocking: whatever the socket does not accept right away is kept in a bounded buffer and written before
+ * the next packet, and packets which do not fit into that buffer anymore are dropped. A broken connection is
+ * re-established on the first packet sent after the reconnect delay, packets sent in the meantime are dropped.
+ */
+public class StatsdTcpTransport implements StatsdTransport {
+
+    public static final int DEFAULT_MAX_PENDING_BYTES = 256 * 1024;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final long RECONNECT_DELAY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final String host;
+    private final int port;
+    private final ByteBuffer pending;
+
+    private SocketChannel channel;
+    private long reconnectNanos;
+
+    public StatsdTcpTransport(String host, int port) {
+        this(host, port, DEFAULT_MAX_PENDING_BYTES);
+    }
+
+    public StatsdTcpTransport(String host, int port, int maxPendingBytes) {
+        this.host = host;
+        this.port = port;
+        this.pending = ByteBuffer.allocateDirect(maxPendingBytes);
+        this.reconnectNanos = System.nanoTime();
+    }
+
+    @Override
+    public void send(ByteBuffer packet) throws IOException {
+        SocketChannel channel = this.connect();
+        if (packet.remaining() + 1 > this.pending.remaining()) {
+            int dropped = packet.remaining();
+            packet.position(packet.limit());
+            throw new IOException("StatsD connection is backed up, dropping " + dropped + " bytes");
+        }
+        this.pending.put(packet);
+        this.pending.put((byte) '\n');
+
+        this.pending.flip();
+        try {
+            channel.write(this.pending);
+        } catch (IOException e) {
+            this.disconnect();
+            throw e;
+        } finally {
+            this.pending.compact();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.channel != null) {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+
+    private SocketChannel connect() throws IOException {
+        if (this.channel != null) {
+            return this.channel;
+        }
+        if (System.nanoTime() - this.reconnectNanos < 0) {
+            throw new IOException("Not connected to StatsD at [" + this.host + ":" + this.port + "], waiting to reconnect");
+        }
+
+        this.reconnectNanos = System.nanoTime() + RECONNECT_DELAY_NANOS;
+        this.pending.clear();
+        SocketChannel channel = SocketChannel.open();
+        try {
+            AccessController.doPrivileged((PrivilegedExceptionAction<Void>) () -> {
+                channel.socket().connect(new InetSocketAddress(this.host, this.port), CONNECT_TIMEOUT_MILLIS);
+                return null;
+            });
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+        } catch (PrivilegedActionException e) {
+            channel.close();
+            throw (IOException) e.getException();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.channel = channel;
+        return channel;
+    }
+
+    private void disconnect() {
+        try {
+            this.close();
+        } catch (IOException e) {
+            // the connection is broken already
+        }
+        this.pending.clear();
+    }
+}
@@ -0,0 +1,169 @@
+package com.automattic.elasticsearch.statsd;
+
+import com.carrotsearch.hppc.LongLongHashMap;
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.carrotsearch.hppc.ObjectLongHashMap;
+import com.carrotsearch.hppc.cursors.LongCursor;
+import com.carrotsearch.hppc.cursors.ObjectLongCursor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sums up the CPU time of all live threads by the thread pool they belong to, so a busy node shows which pool burns
+ * the CPU. The pool is parsed from the Elasticsearch thread names, e.g. {@code search} of
+ * {@code elasticsearch[node-1][search][T#3]}, threads not named by Elasticsearch are summed up as {@code other}.
+ *
+ * The CPU time of a thread is only known while it is alive, so sampling more often than the reports misses less of
+ * the time of short lived threads. Only the CPU time is read for every thread, the name is looked up once per thread.
+ * {@link #run()} and {@link #nextInterval()} may be called from different threads.
+ */
+public class StatsdThreadCpuSampler implements Runnable {
+
+    static final String OTHER_POOL = "other";
+
+    private static final String ES_THREAD_PREFIX = "elasticsearch[";
+
+    private final ThreadMXBean threads;
+    private final LongObjectHashMap<String> poolsByThread = new LongObjectHashMap<>();
+    private LongLongHashMap cpuByThread = new LongLongHashMap();
+    private LongLongHashMap sampledCpuByThread = new LongLongHashMap();
+    private final ObjectLongHashMap<String> cpuByPool = new ObjectLongHashMap<>();
+    private final ObjectLongHashMap<String> reportedCpuByPool = new ObjectLongHashMap<>();
+    private long reportedAtNanos = System.nanoTime();
+    private boolean primed;
+
+    public StatsdThreadCpuSampler() {
+        this(ManagementFactory.getThreadMXBean());
+    }
+
+    /**
+     * @param threads the source of the thread ids, names and CPU times
+     */
+    public StatsdThreadCpuSampler(ThreadMXBean threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Whether the JVM measures the CPU time of threads.
+     */
+    public static boolean isSupported() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+    }
+
+    @Override
+    public synchronized void run() {
+        for (long threadId : this.threads.getAllThreadIds()) {
+            long cpu = this.threads.getThreadCpuTime(threadId);
+            if (cpu < 0) {
+                // died in the meantime
+                continue;
+            }
+            String pool = this.poolsByThread.get(threadId);
+            if (pool == null) {
+                ThreadInfo info = this.threads.getThreadInfo(threadId, 0);
+                if (info == null) {
+                    continue;
+                }
+                pool = poolOf(info.getThreadName());
+                this.poolsByThread.put(threadId, pool);
+            }
+
+            // the threads running before the first sample only count from then on, threads started later entirely
+            long previous = this.cpuByThread.getOrDefault(threadId, this.primed ? 0L : cpu);
+            this.cpuByPool.addTo(pool, cpu - previous);
+            this.sampledCpuByThread.put(threadId, cpu);
+        }
+        this.primed = true;
+
+        // only keep the threads still alive
+        for (LongCursor threadId : this.cpuByThread.keys()) {
+            if (!this.sampledCpuByThread.containsKey(threadId.value)) {
+                this.poolsByThread.remove(threadId.value);
+            }
+        }
+        LongLongHashMap swap = this.cpuByThread;
+        this.cpuByThread = this.sampledCpuByThread;
+        this.sampledCpuByThread = swap;
+        this.sampledCpuByThread.clear();
+    }
+
+    /**
+     * Samples once more and returns the CPU usage by pool since the previous call.
+     */
+    public synchronized Map<String, Interval> nextInterval() {
+        this.run();
+
+        long now = System.nanoTime();
+        long elapsed = Math.max(1, now - this.reportedAtNanos);
+        Map<String, Interval> intervals = new HashMap<>(this.cpuByPool.size() * 2);
+        for (ObjectLongCursor<String> pool : this.cpuByPool) {
+            long delta = pool.value - this.reportedCpuByPool.getOrDefault(pool.key, 0L);
+            intervals.put(pool.key, new Interval(pool.value, 100.0 * delta / elapsed));
+            this.reportedCpuByPool.put(pool.key, pool.value);
+        }
+        this.reportedAtNanos = now;
+        return intervals;
+    }
+
+    /**
+     * The thread pool of an Elasticsearch thread name of the form {@code elasticsearch[NODE][POOL][T#N]} or
+     * {@code elasticsearch[NODE][POOL]}. The pool is parsed from the end, as node names may contain brackets.
+     */
+    public static String poolOf(String threadName) {
+        if (threadName == null || !threadName.startsWith(ES_THREAD_PREFIX)) {
+            return OTHER_POOL;
+        }
+        int end = threadName.lastIndexOf(']');
+        if (end < 0) {
+            return OTHER_POOL;
+        }
+        // drop the thread number
+        int segment = threadName.lastIndexOf('[', end);
+        if (threadName.startsWith("T#", segment + 1) && segment > 0 && threadName.charAt(segment - 1) == ']') {
+            end = segment - 1;
+        }
+        // some threads are named with brackets, e.g. [[timer]]
+        while (end > 0 && threadName.charAt(end - 1) == ']') {
+            end--;
+        }
+        int start = threadName.lastIndexOf('[', end - 1) + 1;
+        if (start <= ES_THREAD_PREFIX.length() || start >= end) {
+            // only the node name
+            return OTHER_POOL;
+        }
+        return threadName.substring(start, end);
+    }
+
+    /**
+     * The CPU usage of the threads of one pool.
+     */
+    public static class Interval {
+
+        private final long totalNanos;
+        private final double percent;
+
+        Interval(long totalNanos, double percent) {
+            this.totalNanos = totalNanos;
+            this.percent = percent;
+        }
+
+        /**
+         * The CPU time of all threads of the pool since sampling started.
+         */
+        public long getTotalNanos() {
+            return this.totalNanos;
+        }
+
+        /**
+         * The CPU time used since the previous interval, relative to the elapsed time, where 100 is one core.
+         */
+        public double getPercent() {
+            return this.percent;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.automattic.elasticsearch.statsd;
+
+import org.elasticsearch.threadpool.ThreadPoolStats;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Samples the queue and active threads of every thread pool many times per reporting interval, so short saturation
+ * spikes between two reports show up as the maximum and average of the interval instead of being missed by a single
+ * snapshot. Samples are folded into primitive per pool accumulators as they are taken, nothing is kept per sample.
+ *
+ * {@link #run()} is called by a single sampling thread, {@link #nextInterval()} by the reporter.
+ */
+public class StatsdThreadPoolSampler implements Runnable {
+
+    private final Supplier<ThreadPoolStats> threadPool;
+
+    // the pools in the order of the stats, which are sorted by name and fixed once the node is built
+    private String[] names = new String[0];
+    private long[] queueSum = new long[0];
+    private int[] queueMax = new int[0];
+    private int[] activeMax = new int[0];
+    private int samples;
+
+    public StatsdThreadPoolSampler(Supplier<ThreadPoolStats> threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    @Override
+    public void run() {
+        ThreadPoolStats stats = this.threadPool.get();
+        synchronized (this) {
+            if (!this.hasPools(stats)) {
+                this.resize(stats);
+            }
+            int i = 0;
+            for (ThreadPoolStats.Stats pool : stats) {
+                this.queueSum[i] += pool.getQueue();
+                this.queueMax[i] = Math.max(this.queueMax[i], pool.getQueue());
+                this.activeMax[i] = Math.max(this.activeMax[i], pool.getActive());
+                i++;
+            }
+            this.samples++;
+        }
+    }
+
+    /**
+     * The aggregates of the samples since the previous call by pool name, empty if nothing has been sampled.
+     */
+    public synchronized Map<String, Interval> nextInterval() {
+        Map<String, Interval> intervals = new HashMap<>(this.names.length * 2);
+        if (this.samples > 0) {
+            for (int i = 0; i < this.names.length; i++) {
+                intervals.put(this.names[i], new Interval(
+                        this.queueMax[i],
+                        (double) this.queueSum[i] / this.samples,
+                        this.activeMax[i]
+                ));
+            }
+        }
+        Arrays.fill(this.queueSum, 0);
+        Arrays.fill(this.queueMax, 0);
+        Arrays.fill(this.activeMax, 0);
+        this.samples = 0;
+        return intervals;
+    }
+
+    private boolean hasPools(ThreadPoolStats stats) {
+        int i = 0;
+        for (ThreadPoolStats.Stats pool : stats) {
+            if (i >= this.names.length || !pool.getName().equals(this.names[i])) {
+                return false;
+            }
+            i++;
+        }
+        return i == this.names.length;
+    }
+
+    /**
+     * Starts over with the pools of the given stats, dropping the samples of the current interval.
+     */
+    private void resize(ThreadPoolStats stats) {
+        int size = 0;
+        for (ThreadPoolStats.Stats ignored : stats) {
+            size++;
+        }
+        this.names = new String[size];
+        int i = 0;
+        for (ThreadPoolStats.Stats pool : stats) {
+            this.names[i++] = pool.getName();
+        }
+        this.queueSum = new long[size];
+        this.queueMax = new int[size];
+        this.activeMax = new int[size];
+        this.samples = 0;
+    }
+
+    /**
+     * The sampled queue and active threads of one pool during a reporting interval.
+     */
+    public static class Interval {
+
+        private final int queueMax;
+        private final double queueAvg;
+        private final int activeMax;
+
+        Interval(int queueMax, double queueAvg, int activeMax) {
+            this.queueMax = queueMax;
+            this.queueAvg = queueAvg;
+            this.activeMax = activeMax;
+        }
+
+        public int getQueueMax() {
+            return this.queueMax;
+        }
+
+        public double getQueueAvg() {
+            return this.queueAvg;
+        }
+
+        public int getActiveMax() {
+            return this.activeMax;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.automattic.elasticsearch.statsd;
+
+import com.carrotsearch.hppc.ObjectLongHashMap;
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
+import org.elasticsearch.action.admin.indices.stats.IndexStats;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Picks the indices reported in full detail when there are too many to report them all, the rest is summed into a
+ * single {@code _other} index. The top indices are selected in one pass with a min-heap bounded to {@code size}
+ * entries, so the cost is linear in the number of indices and the memory bounded by the number of selected ones.
+ *
+ * The rates are the increase of the cumulative totals since the previous selection, which is the same interval for
+ * every index and therefore ranks them like a per second rate would. Indices seen for the first time rank last.
+ */
+public class StatsdTopIndices {
+
+    public static final String OTHER_INDEX = "_other";
+
+    public enum Dimension {
+        /**
+         * Documents indexed since the previous cycle
+         */
+        INDEXING_RATE,
+        /**
+         * Queries executed since the previous cycle
+         */
+        SEARCH_RATE,
+        /**
+         * Size of the index on disk
+         */
+        STORE_SIZE;
+
+        public static Dimension parse(String dimension) {
+            try {
+                return Dimension.valueOf(dimension.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown dimension [" + dimension + "], expected one of [indexing_rate, search_rate, store_size]");
+            }
+        }
+
+        long value(CommonStats stats) {
+            switch (this) {
+                case INDEXING_RATE:
+                    return stats.getIndexing() == null ? 0 : stats.getIndexing().getTotal().getIndexCount();
+                case SEARCH_RATE:
+                    return stats.getSearch() == null ? 0 : stats.getSearch().getTotal().getQueryCount();
+                case STORE_SIZE:
+                    return stats.getStore() == null ? 0 : stats.getStore().sizeInBytes();
+                default:
+                    throw new IllegalArgumentException("Unknown dimension [" + this + "]");
+            }
+        }
+
+        boolean isRate() {
+            return this != STORE_SIZE;
+        }
+    }
+
+    private final int size;
+    private final Dimension dimension;
+    private ObjectLongHashMap<String> previousTotals = new ObjectLongHashMap<>();
+
+    public StatsdTopIndices(int size, Dimension dimension) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive but was " + size);
+        }
+        this.size = size;
+        this.dimension = dimension;
+    }
+
+    /**
+     * Returns the names of the top indices of this cycle.
+     */
+    public synchronized Set<String> select(Iterable<IndexStats> indices) {
+        PriorityQueue<Ranked> top = new PriorityQueue<>(this.size + 1);
+        ObjectLongHashMap<String> totals = this.dimension.isRate() ? new ObjectLongHashMap<>() : null;
+
+        for (IndexStats indexStats : indices) {
+            long value = this.dimension.value(indexStats.getTotal());
+            long score = value;
+            if (totals != null) {
+                totals.put(indexStats.getIndex(), value);
+                long previous = this.previousTotals.getOrDefault(indexStats.getIndex(), -1L);
+                // unknown or reset totals rank last
+                score = (previous < 0 || value < previous) ? -1L : value - previous;
+            }
+
+            if (top.size() < this.size) {
+                top.add(new Ranked(indexStats.getIndex(), score));
+            } else if (score > top.peek().score) {
+                top.poll();
+                top.add(new Ranked(indexStats.getIndex(), score));
+            }
+        }
+
+        if (totals != null) {
+            this.previousTotals = totals;
+        }
+
+        Set<String> selected = new HashSet<>(top.size() * 2);
+        for (Ranked ranked : top) {
+            selected.add(ranked.index);
+        }
+        return selected;
+    }
+
+    private static final class Ranked implements Comparable<Ranked> {
+
+        private final String index;
+        private final long score;
+
+        Ranked(String index, long score) {
+            this.index = index;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Ranked other) {
+            return Long.compare(this.score, other.score);
+        }
+    }
+}
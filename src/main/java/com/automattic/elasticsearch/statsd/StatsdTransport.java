@@ -0,0 +1,62 @@
+package com.automattic.elasticsearch.statsd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Writes packets of newline separated metric lines to StatsD. Implementations other than
+ * {@link StatsdQueueingTransport} are only called by a single thread at a time and do not have to be thread safe.
+ */
+public interface StatsdTransport {
+
+    enum Type {
+        /**
+         * One datagram per packet
+         */
+        UDP,
+        /**
+         * A persistent connection, every packet is terminated by a newline
+         */
+        TCP,
+        /**
+         * Packets are kept in memory, for tests and benchmarks
+         */
+        MEMORY;
+
+        public static Type parse(String type) {
+            try {
+                return Type.valueOf(type.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown transport [" + type + "], expected one of [udp, tcp, memory]");
+            }
+        }
+
+        public StatsdTransport open(String host, int port) throws IOException {
+            switch (this) {
+                case UDP:
+                    return new StatsdUdpTransport(host, port);
+                case TCP:
+                    return new StatsdTcpTransport(host, port);
+                case MEMORY:
+                    return new StatsdMemoryTransport();
+                default:
+                    throw new IllegalArgumentException("Unknown transport [" + this + "]");
+            }
+        }
+    }
+
+    /**
+     * Sends the remaining bytes of the given packet, which does not end with a newline.
+     */
+    void send(ByteBuffer packet) throws IOException;
+
+    /**
+     * Sends the remaining bytes of the given packet, which holds {@code lines} metric lines.
+     */
+    default void send(ByteBuffer packet, int lines) throws IOException {
+        this.send(packet);
+    }
+
+    void close() throws IOException;
+}
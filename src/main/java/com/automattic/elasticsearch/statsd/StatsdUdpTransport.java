@@ -0,0 +1,34 @@
+package com.automattic.elasticsearch.statsd;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Sends every packet as a single datagram.
+ */
+public class StatsdUdpTransport implements StatsdTransport {
+
+    private final DatagramChannel channel;
+
+    public StatsdUdpTransport(String host, int port) throws IOException {
+        this.channel = DatagramChannel.open();
+        try {
+            this.channel.connect(new InetSocketAddress(host, port));
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void send(ByteBuffer packet) throws IOException {
+        this.channel.write(packet);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
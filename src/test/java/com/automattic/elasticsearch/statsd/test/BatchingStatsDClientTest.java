@@ -0,0 +1,122 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.BatchingStatsDClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class BatchingStatsDClientTest {
+
+    private DatagramSocket server;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new DatagramSocket(0);
+        server.setSoTimeout(2000);
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void testThatMetricsArePackedIntoPackets() throws Exception {
+        BatchingStatsDClient client = new BatchingStatsDClient("prefix", "localhost", server.getLocalPort(), 64, e -> {
+            throw new AssertionError(e);
+        });
+
+        client.gauge("a.b", 1L);
+        client.gauge("a.c", 2L);
+        client.count("a.d", 3L);
+        client.gauge("a.e", -4L);
+        client.flush();
+
+        List<String> packets = receive(2);
+        for (String packet : packets) {
+            assertThat(packet.getBytes(StandardCharsets.UTF_8).length, lessThanOrEqualTo(64));
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (String packet : packets) {
+            lines.addAll(Arrays.asList(packet.split("\n")));
+        }
+        assertThat(lines, contains("prefix.a.b:1|g", "prefix.a.c:2|g", "prefix.a.d:3|c", "prefix.a.e:0|g", "prefix.a.e:-4|g"));
+        client.stop();
+    }
+
+    @Test
+    public void testThatNothingIsSentBeforeFlush() throws Exception {
+        BatchingStatsDClient client = new BatchingStatsDClient("", "localhost", server.getLocalPort(), 1432, e -> {
+            throw new AssertionError(e);
+        });
+
+        client.gauge("a", 1L);
+        server.setSoTimeout(200);
+        assertThat(receive(1).isEmpty(), is(true));
+
+        client.flush();
+        server.setSoTimeout(2000);
+        assertThat(receive(1), contains("a:1|g"));
+        client.stop();
+    }
+
+    @Test
+    public void testThatNamesAndValuesAreEncoded() throws Exception {
+        BatchingStatsDClient client = new BatchingStatsDClient("prefix", "localhost", server.getLocalPort(), 1432, e -> {
+            throw new AssertionError(e);
+        });
+
+        client.gauge("node.n1.jvm.heap", 12.5);
+        client.gauge("node.n1.load", 0.000012);
+        client.gauge("node.n1.os.nan", Double.NaN);
+        client.gauge("node.n1.os.big", 123456789012345678L);
+        client.gauge("node.n1.os.huge", 1e19);
+        client.gauge("node.n1.os.negative_huge", -1.5e30);
+        client.count("index.\u00e9t\u00e9.docs.count", Long.MIN_VALUE);
+        client.recordExecutionTime("node.n1.cycle.duration", 42);
+        client.flush();
+
+        List<String> packets = receive(1);
+        assertThat(packets.size(), is(1));
+        assertThat(Arrays.asList(packets.get(0).split("\n")), contains(
+                "prefix.node.n1.jvm.heap:12.5|g",
+                "prefix.node.n1.load:0.000012|g",
+                "prefix.node.n1.os.big:123456789012345678|g",
+                "prefix.node.n1.os.huge:10000000000000000000|g",
+                "prefix.node.n1.os.negative_huge:0|g",
+                "prefix.node.n1.os.negative_huge:-1500000000000000000000000000000|g",
+                "prefix.index.\u00e9t\u00e9.docs.count:-9223372036854775808|c",
+                "prefix.node.n1.cycle.duration:42|ms"
+        ));
+        client.stop();
+    }
+
+    private List<String> receive(int maxPackets) throws Exception {
+        List<String> packets = new ArrayList<>();
+        byte[] buf = new byte[65535];
+        try {
+            while (packets.size() < maxPackets) {
+                DatagramPacket packet = new DatagramPacket(buf, buf.length);
+                server.receive(packet);
+                packets.add(new String(buf, 0, packet.getLength(), StandardCharsets.UTF_8));
+            }
+        } catch (SocketTimeoutException e) {
+            // fewer packets than expected
+        }
+        return packets;
+    }
+}
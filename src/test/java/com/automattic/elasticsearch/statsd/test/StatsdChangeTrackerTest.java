@@ -0,0 +1,132 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.BatchingStatsDClient;
+import com.automattic.elasticsearch.statsd.StatsdChangeTracker;
+import com.automattic.elasticsearch.statsd.StatsdMemoryTransport;
+import com.automattic.elasticsearch.statsd.StatsdMetricNameCache;
+import com.automattic.elasticsearch.statsd.StatsdMetricScope;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StatsdChangeTrackerTest {
+
+    @Test
+    public void testThatValuesAreOnlySuppressedOnceRecorded() {
+        StatsdChangeTracker tracker = new StatsdChangeTracker(1000);
+
+        tracker.nextCycle();
+        assertThat(tracker.changed(1L, 5L), is(true));
+        assertThat(tracker.changed(1L, 5L), is(true));
+        tracker.record(1L, 5L);
+        assertThat(tracker.changed(1L, 5L), is(false));
+        assertThat(tracker.changed(1L, 6L), is(true));
+    }
+
+    @Test
+    public void testThatUnchangedValuesAreResentOnTheirHeartbeat() {
+        StatsdChangeTracker tracker = new StatsdChangeTracker(3);
+
+        // key 1 is due for its heartbeat in the cycles 2, 5, 8...
+        tracker.nextCycle();
+        assertThat(tracker.changed(1L, 5L), is(true));
+        tracker.record(1L, 5L);
+        tracker.nextCycle();
+        assertThat(tracker.changed(1L, 5L), is(true));
+        tracker.record(1L, 5L);
+        tracker.nextCycle();
+        assertThat(tracker.changed(1L, 5L), is(false));
+        tracker.nextCycle();
+        assertThat(tracker.changed(1L, 5L), is(false));
+        tracker.nextCycle();
+        assertThat(tracker.changed(1L, 5L), is(true));
+    }
+
+    @Test
+    public void testThatValuesNotReportedForTwoRotationsAreDropped() {
+        StatsdChangeTracker tracker = new StatsdChangeTracker(3);
+
+        // keys 1 and 4 are due for their heartbeat in the same cycles, the generations rotate in the cycles 3, 6...
+        tracker.nextCycle();
+        tracker.record(1L, 5L);
+        tracker.record(4L, 5L);
+        cycles(tracker, 3);
+        // the value survives the first rotation and is kept by checking it
+        assertThat(tracker.changed(1L, 5L), is(false));
+        cycles(tracker, 3);
+        assertThat(tracker.changed(1L, 5L), is(false));
+        assertThat(tracker.changed(4L, 5L), is(true));
+    }
+
+    @Test
+    public void testThatUnchangedGaugesAreSuppressed() throws Exception {
+        StatsdChangeTracker changeTracker = new StatsdChangeTracker(1000);
+        StatsdMemoryTransport transport = new StatsdMemoryTransport();
+        BatchingStatsDClient client = new BatchingStatsDClient("", transport, 1432, e -> {
+            throw new AssertionError(e);
+        }, changeTracker, null);
+        StatsdMetricNameCache nameCache = new StatsdMetricNameCache(StatsdMetricNameCache.Format.PLAIN);
+        StatsdMetricScope scope = nameCache.indexScope("a");
+
+        changeTracker.nextCycle();
+        client.gauge(scope, nameCache.statKey(null, "b"), 1L);
+        client.gauge(scope, nameCache.statKey(null, "c"), -1L);
+        client.count("a.d", 1L);
+        client.flush();
+        assertThat(Arrays.asList(transport.drain().get(0).split("\n")), contains(
+                "index.a.total.b:1|g", "index.a.total.c:0|g", "index.a.total.c:-1|g", "a.d:1|c"
+        ));
+
+        changeTracker.nextCycle();
+        client.gauge(scope, nameCache.statKey(null, "b"), 1L);
+        client.gauge(scope, nameCache.statKey(null, "c"), -2L);
+        client.count("a.d", 1L);
+        client.flush();
+        assertThat(Arrays.asList(transport.drain().get(0).split("\n")), contains(
+                "index.a.total.c:0|g", "index.a.total.c:-2|g", "a.d:1|c"
+        ));
+        client.stop();
+    }
+
+    @Test
+    public void testThatGaugesWhichDidNotFitAreNotSuppressed() {
+        StatsdChangeTracker changeTracker = new StatsdChangeTracker(1000);
+        StatsdMemoryTransport transport = new StatsdMemoryTransport();
+        List<Exception> errors = new ArrayList<>();
+        // a negative gauge is sent after a reset line, which makes it too long for the packet
+        BatchingStatsDClient client = new BatchingStatsDClient("", transport, 32, errors::add, changeTracker, null);
+        StatsdMetricNameCache nameCache = new StatsdMetricNameCache(StatsdMetricNameCache.Format.PLAIN);
+        StatsdMetricScope scope = nameCache.indexScope("a");
+        byte[] statKey = nameCache.statKey("docs", "count");
+
+        changeTracker.nextCycle();
+        client.gauge(scope, statKey, -1L);
+        client.flush();
+        assertThat(errors.size(), is(1));
+
+        changeTracker.nextCycle();
+        client.gauge(scope, statKey, -1L);
+        client.flush();
+        assertThat(errors.size(), is(2));
+        assertThat(transport.drain().isEmpty(), is(true));
+
+        changeTracker.nextCycle();
+        client.gauge(scope, statKey, 1L);
+        client.gauge(scope, statKey, 1L);
+        client.flush();
+        assertThat(transport.drain(), contains("index.a.total.docs.count:1|g"));
+        client.stop();
+    }
+
+    private static void cycles(StatsdChangeTracker tracker, int cycles) {
+        for (int i = 0; i < cycles; i++) {
+            tracker.nextCycle();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.BatchingStatsDClient;
+import com.automattic.elasticsearch.statsd.StatsdCounterTracker;
+import com.automattic.elasticsearch.statsd.StatsdMemoryTransport;
+import com.automattic.elasticsearch.statsd.StatsdMetricNameCache;
+import com.automattic.elasticsearch.statsd.StatsdMetricScope;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StatsdCounterTrackerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testThatCountersAreSentAsDeltas() throws Exception {
+        StatsdCounterTracker counterTracker = new StatsdCounterTracker(StatsdCounterTracker.Mode.COUNT);
+        StatsdMemoryTransport transport = new StatsdMemoryTransport();
+        BatchingStatsDClient client = new BatchingStatsDClient("", transport, 1432, e -> {
+            throw new AssertionError(e);
+        }, null, counterTracker);
+        StatsdMetricNameCache nameCache = new StatsdMetricNameCache(StatsdMetricNameCache.Format.PLAIN);
+        StatsdMetricScope scope = nameCache.indexScope("a");
+        byte[] total = nameCache.statKey(null, "total");
+        byte[] flushed = nameCache.statKey(null, "flushed");
+
+        // first observation and resets are not sent
+        client.counter(scope, total, 10L);
+        client.gauge(scope, flushed, 1L);
+        client.flush();
+        assertThat(transport.drain(), contains("index.a.total.flushed:1|g"));
+
+        counterTracker.nextCycle();
+        client.counter(scope, total, 15L);
+        client.flush();
+        assertThat(transport.drain(), contains("index.a.total.total:5|c"));
+
+        counterTracker.nextCycle();
+        client.counter(scope, total, 3L);
+        client.gauge(scope, flushed, 1L);
+        client.flush();
+        assertThat(transport.drain(), contains("index.a.total.flushed:1|g"));
+
+        counterTracker.nextCycle();
+        client.counter(scope, total, 7L);
+        client.flush();
+        assertThat(transport.drain(), contains("index.a.total.total:4|c"));
+        client.stop();
+    }
+
+    @Test
+    public void testThatRatesAcceptAnyNanoTime() {
+        StatsdCounterTracker tracker = new StatsdCounterTracker(StatsdCounterTracker.Mode.RATE);
+
+        assertThat(Double.isNaN(tracker.rate(1L, 0L, -SECOND)), is(true));
+        // the rotation moves the first sample to the previous generation
+        for (int i = 0; i < StatsdCounterTracker.ROTATION_CYCLES; i++) {
+            tracker.nextCycle();
+        }
+        assertThat(tracker.rate(1L, 10L, 0L), is(10.0));
+        assertThat(tracker.rate(1L, 30L, 2 * SECOND), is(10.0));
+    }
+
+    @Test
+    public void testThatResetsHaveNoRate() {
+        StatsdCounterTracker tracker = new StatsdCounterTracker(StatsdCounterTracker.Mode.RATE);
+
+        assertThat(Double.isNaN(tracker.rate(1L, 10L, SECOND)), is(true));
+        assertThat(Double.isNaN(tracker.rate(1L, 5L, 2 * SECOND)), is(true));
+        assertThat(tracker.rate(1L, 6L, 3 * SECOND), is(1.0));
+    }
+}
@@ -0,0 +1,48 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import org.junit.Test;
+
+import static com.automattic.elasticsearch.statsd.StatsdFixedRateTask.delay;
+import static com.automattic.elasticsearch.statsd.StatsdFixedRateTask.followingTick;
+import static com.automattic.elasticsearch.statsd.StatsdFixedRateTask.missedTicks;
+import static com.automattic.elasticsearch.statsd.StatsdFixedRateTask.nextTick;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StatsdFixedRateTaskTest {
+
+    @Test
+    public void testThatTicksAreAlignedToTheInterval() {
+        assertThat(nextTick(0, 10_000), is(10_000L));
+        assertThat(nextTick(9_999, 10_000), is(10_000L));
+        assertThat(nextTick(10_000, 10_000), is(20_000L));
+        assertThat(nextTick(12_345, 10_000), is(20_000L));
+    }
+
+    @Test
+    public void testThatRunsWithinTheIntervalMoveOnByOneInterval() {
+        assertThat(followingTick(10_000, 10_500, 10_000), is(20_000L));
+        assertThat(followingTick(10_000, 19_999, 10_000), is(20_000L));
+        // fired a bit before the tick by the wall clock
+        assertThat(followingTick(10_000, 9_990, 10_000), is(20_000L));
+        assertThat(missedTicks(10_000, 19_999, 10_000), is(0L));
+    }
+
+    @Test
+    public void testThatOverrunsSkipTheMissedTicks() {
+        assertThat(missedTicks(10_000, 20_000, 10_000), is(1L));
+        assertThat(missedTicks(10_000, 35_000, 10_000), is(2L));
+        assertThat(followingTick(10_000, 35_000, 10_000), is(40_000L));
+    }
+
+    @Test
+    public void testThatClockStepsDoNotStallTheRuns() {
+        // the clock stepped back an hour, the runs align to the new boundaries
+        assertThat(followingTick(3_610_000, 10_500, 10_000), is(20_000L));
+        assertThat(missedTicks(3_610_000, 10_500, 10_000), is(0L));
+        // the delay is never longer than an interval nor negative
+        assertThat(delay(3_620_000, 10_500, 10_000), is(10_000L));
+        assertThat(delay(20_000, 10_500, 10_000), is(9_500L));
+        assertThat(delay(20_000, 25_000, 10_000), is(0L));
+    }
+}
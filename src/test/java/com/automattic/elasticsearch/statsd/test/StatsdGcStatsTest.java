@@ -0,0 +1,143 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.StatsdGcStats;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.junit.Test;
+
+import javax.management.Notification;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StatsdGcStatsTest {
+
+    private static final CompositeType MEMORY_USAGE = compositeType(
+            "java.lang.management.MemoryUsage",
+            new String[]{"init", "used", "committed", "max"},
+            new OpenType<?>[]{SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG}
+    );
+    private static final TabularType MEMORY_USAGES = tabularType();
+    private static final CompositeType GC_INFO = compositeType(
+            "GcInfo",
+            new String[]{"id", "startTime", "endTime", "duration", "memoryUsageBeforeGc", "memoryUsageAfterGc"},
+            new OpenType<?>[]{SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, MEMORY_USAGES, MEMORY_USAGES}
+    );
+    private static final CompositeType GC_NOTIFICATION = compositeType(
+            "GarbageCollectionNotificationInfo",
+            new String[]{"gcName", "gcAction", "gcCause", "gcInfo"},
+            new OpenType<?>[]{SimpleType.STRING, SimpleType.STRING, SimpleType.STRING, GC_INFO}
+    );
+
+    private long sequence;
+
+    @Test
+    public void testThatAllocationAndPromotionAreDerivedFromThePoolSizes() throws Exception {
+        StatsdGcStats gcStats = new StatsdGcStats();
+
+        // the allocations before the first collection are unknown
+        gcStats.handleNotification(this.youngGc(
+                pools(100, 0, 1000),
+                pools(0, 10, 1000)
+        ), null);
+        assertThat(gcStats.getAllocatedBytes(), is(0L));
+        assertThat(gcStats.getPromotedBytes(), is(0L));
+
+        gcStats.handleNotification(this.youngGc(
+                pools(500, 10, 1000),
+                pools(0, 20, 1030)
+        ), null);
+        assertThat(gcStats.getAllocatedBytes(), is(500L));
+        assertThat(gcStats.getPromotedBytes(), is(30L));
+
+        // collections which do not shrink the young generation promote nothing
+        gcStats.handleNotification(this.youngGc(
+                pools(120, 20, 1030),
+                pools(120, 20, 1100)
+        ), null);
+        assertThat(gcStats.getAllocatedBytes(), is(620L));
+        assertThat(gcStats.getPromotedBytes(), is(30L));
+
+        assertThat(gcStats.getCollectors().get("young").getCauses().get("Allocation Failure").sum(), is(3L));
+    }
+
+    @Test
+    public void testThatOtherNotificationsAreIgnored() {
+        StatsdGcStats gcStats = new StatsdGcStats();
+
+        gcStats.handleNotification(new Notification("jmx.attribute.change", "test", 1), null);
+        assertThat(gcStats.getCollectors().isEmpty(), is(true));
+    }
+
+    private Notification youngGc(Map<String, Long> before, Map<String, Long> after) throws Exception {
+        long id = ++this.sequence;
+        CompositeData gcInfo = new CompositeDataSupport(
+                GC_INFO,
+                new String[]{"id", "startTime", "endTime", "duration", "memoryUsageBeforeGc", "memoryUsageAfterGc"},
+                new Object[]{id, id * 1000, id * 1000 + 5, 5L, memoryUsages(before), memoryUsages(after)}
+        );
+        Notification notification = new Notification(
+                GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION, "test", id
+        );
+        notification.setUserData(new CompositeDataSupport(
+                GC_NOTIFICATION,
+                new String[]{"gcName", "gcAction", "gcCause", "gcInfo"},
+                new Object[]{"PS Scavenge", "end of minor GC", "Allocation Failure", gcInfo}
+        ));
+        return notification;
+    }
+
+    private static Map<String, Long> pools(long eden, long survivor, long old) {
+        Map<String, Long> pools = new LinkedHashMap<>();
+        pools.put("PS Eden Space", eden);
+        pools.put("PS Survivor Space", survivor);
+        pools.put("PS Old Gen", old);
+        return pools;
+    }
+
+    private static TabularDataSupport memoryUsages(Map<String, Long> used) throws Exception {
+        TabularDataSupport usages = new TabularDataSupport(MEMORY_USAGES);
+        for (Map.Entry<String, Long> pool : used.entrySet()) {
+            CompositeData usage = new CompositeDataSupport(
+                    MEMORY_USAGE,
+                    new String[]{"init", "used", "committed", "max"},
+                    new Object[]{0L, pool.getValue(), pool.getValue(), -1L}
+            );
+            usages.put(new CompositeDataSupport(
+                    MEMORY_USAGES.getRowType(),
+                    new String[]{"key", "value"},
+                    new Object[]{pool.getKey(), usage}
+            ));
+        }
+        return usages;
+    }
+
+    private static TabularType tabularType() {
+        try {
+            CompositeType row = compositeType(
+                    "Map<java.lang.String,java.lang.management.MemoryUsage>",
+                    new String[]{"key", "value"},
+                    new OpenType<?>[]{SimpleType.STRING, MEMORY_USAGE}
+            );
+            return new TabularType(row.getTypeName(), row.getTypeName(), row, new String[]{"key"});
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static CompositeType compositeType(String name, String[] items, OpenType<?>[] types) {
+        try {
+            return new CompositeType(name, name, items, items, types);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
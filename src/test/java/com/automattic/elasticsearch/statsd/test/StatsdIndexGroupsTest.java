@@ -0,0 +1,52 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.StatsdIndexGroups;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class StatsdIndexGroupsTest {
+
+    @Test
+    public void testThatIndicesAreGroupedByTheirEntireName() {
+        StatsdIndexGroups groups = StatsdIndexGroups.build(Settings.builder()
+                .put("logs", "logs-\\d{4}\\.\\d{2}\\.\\d{2}")
+                .put("metrics", "metrics-.*")
+                .build());
+
+        assertThat(groups.groupOf("logs-2017.05.01"), is("logs"));
+        assertThat(groups.groupOf("metrics-node-1"), is("metrics"));
+        // the expression has to match the entire name
+        assertThat(groups.groupOf("logs-2017.05.01-restored"), nullValue());
+        assertThat(groups.groupOf("old-metrics-node-1"), nullValue());
+        assertThat(groups.groupOf("users"), nullValue());
+    }
+
+    @Test
+    public void testThatTheFirstGroupByNameWins() {
+        // inserted in the reverse order of the names
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put("b_all", ".*");
+        rules.put("a_logs", "logs-.*");
+        StatsdIndexGroups groups = new StatsdIndexGroups(rules);
+
+        assertThat(groups.groupOf("logs-1"), is("a_logs"));
+        assertThat(groups.groupOf("users"), is("b_all"));
+    }
+
+    @Test
+    public void testThatNoGroupsAreBuiltWithoutRules() {
+        assertThat(StatsdIndexGroups.build(Settings.EMPTY), nullValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatInvalidExpressionsAreRejected() {
+        StatsdIndexGroups.validate(Settings.builder().put("logs", "logs-(").build());
+    }
+}
@@ -0,0 +1,82 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.BatchingStatsDClient;
+import com.automattic.elasticsearch.statsd.StatsdMemoryTransport;
+import com.automattic.elasticsearch.statsd.StatsdMetricFilter;
+import com.automattic.elasticsearch.statsd.StatsdMetricNameCache;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static java.util.Collections.emptyList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class StatsdMetricFilterTest {
+
+    @Test
+    public void testThatFilteredMetricsAreNotSent() throws Exception {
+        StatsdMetricNameCache nameCache = new StatsdMetricNameCache(StatsdMetricNameCache.Format.PLAIN, new StatsdMetricFilter(
+                Arrays.asList("*.search.*", "node.jvm.mem.*"),
+                Arrays.asList("*.fetch_*", "*.warmer.*"),
+                emptyList(),
+                Arrays.asList("logs-*")
+        ));
+        StatsdMemoryTransport transport = new StatsdMemoryTransport();
+        BatchingStatsDClient client = new BatchingStatsDClient("", transport, 1432, e -> {
+            throw new AssertionError(e);
+        }, null, null);
+
+        assertThat(nameCache.indexScope("test").reports("search"), is(true));
+        assertThat(nameCache.indexScope("test").reports("warmer"), is(false));
+        assertThat(nameCache.indexScope("logs-1").reports(), is(false));
+        assertThat(nameCache.nodeScope("n1", "jvm").reports(), is(true));
+
+        client.gauge(nameCache.indexScope("test"), nameCache.statKey("search", "query_total"), 1L);
+        client.gauge(nameCache.indexScope("test"), nameCache.statKey("search", "fetch_total"), 2L);
+        client.gauge(nameCache.indexScope("test"), nameCache.statKey("docs", "count"), 3L);
+        client.gauge(nameCache.indexScope("logs-1"), nameCache.statKey("search", "query_total"), 4L);
+        client.gauge(nameCache.nodeScope("n1", "jvm"), nameCache.statKey("mem", "heap_used_in_bytes"), 5L);
+        client.gauge(nameCache.nodeScope("n1", "jvm"), nameCache.statKey("threads", "count"), 6L);
+        client.flush();
+
+        assertThat(transport.drain(), contains(
+                "index.test.total.search.query_total:1|g\nnode.n1.jvm.mem.heap_used_in_bytes:5|g"
+        ));
+        client.stop();
+    }
+
+    @Test
+    public void testThatExcludingEverythingRejectsAllScopes() throws Exception {
+        StatsdMetricNameCache nameCache = new StatsdMetricNameCache(StatsdMetricNameCache.Format.PLAIN, new StatsdMetricFilter(
+                emptyList(),
+                Collections.singletonList("*"),
+                emptyList(),
+                emptyList()
+        ));
+        StatsdMemoryTransport transport = new StatsdMemoryTransport();
+        BatchingStatsDClient client = new BatchingStatsDClient("", transport, 1432, e -> {
+            throw new AssertionError(e);
+        }, null, null);
+
+        assertThat(nameCache.indicesScope().reports(), is(false));
+        assertThat(nameCache.indexScope("test").reports(), is(false));
+        assertThat(nameCache.nodeScope("n1", "jvm").reports(), is(false));
+        assertThat(nameCache.nodeScope("n1", "thread_pool", "thread_pool", "search").reports("search"), is(false));
+
+        client.gauge(nameCache.indexScope("test"), nameCache.statKey("docs", "count"), 1L);
+        client.gauge(nameCache.nodeScope("n1", "jvm"), nameCache.statKey("mem", "heap_used_in_bytes"), 2L);
+        client.flush();
+
+        assertThat(transport.drain().isEmpty(), is(true));
+        client.stop();
+    }
+
+    @Test
+    public void testThatNoFilterIsBuiltWithoutPatterns() {
+        assertThat(StatsdMetricFilter.build(emptyList(), emptyList(), emptyList(), emptyList()), nullValue());
+    }
+}
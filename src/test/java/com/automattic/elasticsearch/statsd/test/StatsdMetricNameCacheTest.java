@@ -0,0 +1,86 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.BatchingStatsDClient;
+import com.automattic.elasticsearch.statsd.StatsdChangeTracker;
+import com.automattic.elasticsearch.statsd.StatsdMemoryTransport;
+import com.automattic.elasticsearch.statsd.StatsdMetricNameCache;
+import com.automattic.elasticsearch.statsd.StatsdMetricScope;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class StatsdMetricNameCacheTest {
+
+    @Test
+    public void testThatDogStatsdTagsAreAppended() throws Exception {
+        StatsdChangeTracker changeTracker = new StatsdChangeTracker(1000);
+        StatsdMemoryTransport transport = new StatsdMemoryTransport();
+        BatchingStatsDClient client = new BatchingStatsDClient("prefix", transport, 1432, e -> {
+            throw new AssertionError(e);
+        }, changeTracker, null);
+        StatsdMetricNameCache nameCache = new StatsdMetricNameCache(StatsdMetricNameCache.Format.DOGSTATSD);
+
+        changeTracker.nextCycle();
+        client.gauge(nameCache.shardScope("my index", 0), nameCache.statKey("docs", "count"), 10L);
+        client.gauge(nameCache.shardScope("my index", 1), nameCache.statKey("docs", "count"), 10L);
+        client.gauge(nameCache.nodeScope("n1", "jvm.gc.collectors", "collector", "young"), nameCache.statKey(null, "total"), -1L);
+        client.flush();
+
+        assertThat(transport.drain(), contains(
+                "prefix.shard.docs.count:10|g|#index:my_index,shard:0\n"
+                        + "prefix.shard.docs.count:10|g|#index:my_index,shard:1\n"
+                        + "prefix.node.jvm.gc.collectors.total:0|g|#node:n1,collector:young\n"
+                        + "prefix.node.jvm.gc.collectors.total:-1|g|#node:n1,collector:young"
+        ));
+        client.stop();
+    }
+
+    @Test
+    public void testThatShardCopiesHaveTheirOwnScopes() throws Exception {
+        StatsdMetricNameCache plain = new StatsdMetricNameCache(StatsdMetricNameCache.Format.PLAIN);
+        StatsdMetricNameCache dogstatsd = new StatsdMetricNameCache(StatsdMetricNameCache.Format.DOGSTATSD);
+        StatsdMemoryTransport transport = new StatsdMemoryTransport();
+        BatchingStatsDClient client = new BatchingStatsDClient("", transport, 1432, e -> {
+            throw new AssertionError(e);
+        }, null, null);
+
+        client.gauge(plain.primaryScope("my index", 0), plain.statKey("docs", "count"), 1L);
+        client.gauge(plain.replicaScope("my index", 0, "n1"), plain.statKey("docs", "count"), 2L);
+        client.gauge(dogstatsd.primaryScope("my index", 0), dogstatsd.statKey("docs", "count"), 3L);
+        client.gauge(dogstatsd.replicaScope("my index", 0, "n1"), dogstatsd.statKey("docs", "count"), 4L);
+        client.flush();
+
+        assertThat(transport.drain(), contains(
+                "index.my-index.primaries.0.docs.count:1|g\n"
+                        + "index.my-index.replicas.0.n1.docs.count:2|g\n"
+                        + "primary_shard.docs.count:3|g|#index:my_index,shard:0\n"
+                        + "replica_shard.docs.count:4|g|#index:my_index,shard:0,node:n1"
+        ));
+        client.stop();
+    }
+
+    @Test
+    public void testThatScopesOfDeletedIndicesAreEvicted() {
+        StatsdMetricNameCache nameCache = new StatsdMetricNameCache();
+
+        StatsdMetricScope index = nameCache.indexScope("logs-1");
+        StatsdMetricScope shard = nameCache.shardScope("logs-1", 0);
+        StatsdMetricScope latency = nameCache.nodeScope("n1", "latency.index", StatsdMetricNameCache.INDEX_DIMENSION, "logs-1");
+        StatsdMetricScope otherLatency = nameCache.nodeScope("n1", "latency.index", StatsdMetricNameCache.INDEX_DIMENSION, "logs-2");
+        StatsdMetricScope threadPool = nameCache.nodeScope("n1", "thread_pool", "thread_pool", "logs-1");
+        assertThat(nameCache.indexScope("logs-1"), sameInstance(index));
+        assertThat(nameCache.nodeScope("n1", "latency.index", StatsdMetricNameCache.INDEX_DIMENSION, "logs-1"), sameInstance(latency));
+
+        nameCache.evictIndex("logs-1");
+
+        assertThat(nameCache.indexScope("logs-1"), not(sameInstance(index)));
+        assertThat(nameCache.shardScope("logs-1", 0), not(sameInstance(shard)));
+        assertThat(nameCache.nodeScope("n1", "latency.index", StatsdMetricNameCache.INDEX_DIMENSION, "logs-1"), not(sameInstance(latency)));
+        // other indices and node scopes which are not per index are kept
+        assertThat(nameCache.nodeScope("n1", "latency.index", StatsdMetricNameCache.INDEX_DIMENSION, "logs-2"), sameInstance(otherLatency));
+        assertThat(nameCache.nodeScope("n1", "thread_pool", "thread_pool", "logs-1"), sameInstance(threadPool));
+    }
+}
@@ -0,0 +1,79 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.BatchingStatsDClient;
+import com.automattic.elasticsearch.statsd.StatsdMemoryTransport;
+import com.automattic.elasticsearch.statsd.StatsdMetricNameCache;
+import com.automattic.elasticsearch.statsd.StatsdMetricsRegistry;
+import com.automattic.elasticsearch.statsd.StatsdReporterRegistry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class StatsdMetricsRegistryTest {
+
+    @Test
+    public void testThatRegisteredMetricsAreSent() throws Exception {
+        StatsdMetricsRegistry registry = new StatsdMetricsRegistry();
+        StatsdMemoryTransport transport = new StatsdMemoryTransport();
+        BatchingStatsDClient client = new BatchingStatsDClient("", transport, 1432, e -> {
+            throw new AssertionError(e);
+        }, null, null);
+
+        registry.counter("requests").add(3);
+        registry.counter("requests").increment();
+        registry.gauge("queue", () -> 7);
+        // percentiles are precise to two significant digits
+        registry.timer("took").record(2, TimeUnit.MILLISECONDS);
+
+        new StatsdReporterRegistry(registry, "n1", new StatsdMetricNameCache(StatsdMetricNameCache.Format.PLAIN, null))
+                .setStatsDClient(client)
+                .run();
+        client.flush();
+
+        // metrics are reported in the iteration order of the registry
+        List<String> lines = new ArrayList<>();
+        for (String packet : transport.drain()) {
+            lines.addAll(Arrays.asList(packet.split("\n")));
+        }
+        assertThat(lines, containsInAnyOrder(
+                "node.n1.custom.took.count:1|g",
+                "node.n1.custom.took.p50_in_millis:2.007|g",
+                "node.n1.custom.took.p95_in_millis:2.007|g",
+                "node.n1.custom.took.p99_in_millis:2.007|g",
+                "node.n1.custom.took.max_in_millis:2.007|g",
+                "node.n1.custom.requests:4|g",
+                "node.n1.custom.queue:7|g"
+        ));
+        client.stop();
+    }
+
+    @Test
+    public void testThatNamesBreakingTheLineProtocolAreRejected() {
+        StatsdMetricsRegistry registry = new StatsdMetricsRegistry();
+        for (String name : new String[]{"", "a:b", "a|b", "a#b", "a@b", "a\nb", "a\rb"}) {
+            try {
+                registry.counter(name);
+                fail("expected [" + name + "] to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        assertThat(registry.counter("my_plugin.requests-total"), sameInstance(registry.counter("my_plugin.requests-total")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatNamesCannotChangeTheirType() {
+        StatsdMetricsRegistry registry = new StatsdMetricsRegistry();
+        registry.counter("a");
+        registry.timer("a");
+    }
+}
@@ -33,7 +33,7 @@ public class StatsdMockServer extends Thread {
                 if (socket.isClosed())
                     return;
 
-                byte[] buf = new byte[256];
+                byte[] buf = new byte[65535];
 
                 // receive request
                 DatagramPacket packet = new DatagramPacket(buf, buf.length);
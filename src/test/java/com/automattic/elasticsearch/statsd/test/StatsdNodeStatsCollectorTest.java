@@ -0,0 +1,85 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.StatsdNodeStatsCollector;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.monitor.jvm.JvmStats;
+import org.elasticsearch.monitor.os.OsStats;
+import org.elasticsearch.monitor.process.ProcessProbe;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class StatsdNodeStatsCollectorTest {
+
+    private final AtomicInteger jvmSamples = new AtomicInteger();
+    private final AtomicInteger osSamples = new AtomicInteger();
+    private final AtomicInteger processSamples = new AtomicInteger();
+
+    @Test
+    public void testThatOnlyTheRequestedStatsAreSampled() {
+        StatsdNodeStatsCollector collector = this.collector(TimeValue.ZERO);
+
+        assertThat(collector.jvm() == null, is(false));
+        assertThat(this.jvmSamples.get(), is(1));
+        assertThat(this.osSamples.get(), is(0));
+        assertThat(this.processSamples.get(), is(0));
+        // stats which are not reported have no supplier
+        assertThat(collector.http(), nullValue());
+    }
+
+    @Test
+    public void testThatProbesAreCachedUntilTheyExpire() throws Exception {
+        StatsdNodeStatsCollector cached = this.collector(TimeValue.timeValueHours(1));
+        OsStats os = cached.os();
+        assertThat(cached.os(), sameInstance(os));
+        cached.process();
+        cached.process();
+        assertThat(this.osSamples.get(), is(1));
+        assertThat(this.processSamples.get(), is(1));
+        // the cheap stats are never cached
+        cached.jvm();
+        cached.jvm();
+        assertThat(this.jvmSamples.get(), is(2));
+
+        StatsdNodeStatsCollector expiring = this.collector(TimeValue.timeValueMillis(1));
+        expiring.os();
+        Thread.sleep(10);
+        expiring.os();
+        assertThat(this.osSamples.get(), is(3));
+    }
+
+    private StatsdNodeStatsCollector collector(TimeValue probeCache) {
+        return new StatsdNodeStatsCollector(
+                null,
+                counting(this.jvmSamples, JvmStats::jvmStats),
+                counting(this.osSamples, () -> new OsStats(
+                        System.currentTimeMillis(),
+                        new OsStats.Cpu((short) 0, null),
+                        new OsStats.Mem(0, 0),
+                        new OsStats.Swap(0, 0),
+                        null
+                )),
+                counting(this.processSamples, () -> ProcessProbe.getInstance().processStats()),
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                probeCache
+        );
+    }
+
+    private static <T> Supplier<T> counting(AtomicInteger samples, Supplier<T> supplier) {
+        return () -> {
+            samples.incrementAndGet();
+            return supplier.get();
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.BatchingStatsDClient;
+import com.automattic.elasticsearch.statsd.StatsdMemoryTransport;
+import com.automattic.elasticsearch.statsd.StatsdMetricNameCache;
+import com.automattic.elasticsearch.statsd.StatsdOperationStats;
+import com.automattic.elasticsearch.statsd.StatsdReporterOperationStats;
+import org.elasticsearch.common.unit.TimeValue;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+
+public class StatsdOperationStatsTest {
+
+    @Test
+    public void testThatSlowOperationsAreSentAsCounters() throws Exception {
+        StatsdOperationStats operationStats = new StatsdOperationStats(false, false, StatsdOperationStats.slowThresholds(
+                Arrays.asList(TimeValue.timeValueMillis(100), TimeValue.timeValueSeconds(1)),
+                emptyList()
+        ));
+        StatsdMemoryTransport transport = new StatsdMemoryTransport();
+        // the counters are deltas even if cumulative counters are sent as gauges
+        BatchingStatsDClient client = new BatchingStatsDClient("", transport, 1432, e -> {
+            throw new AssertionError(e);
+        }, null, null);
+        StatsdMetricNameCache nameCache = new StatsdMetricNameCache(StatsdMetricNameCache.Format.PLAIN);
+
+        StatsdOperationStats.Stats node = operationStats.getNodeStats();
+        node.onOperation(StatsdOperationStats.Operation.QUERY, TimeValue.timeValueMillis(50).nanos());
+        node.onOperation(StatsdOperationStats.Operation.QUERY, TimeValue.timeValueMillis(200).nanos());
+        node.onOperation(StatsdOperationStats.Operation.QUERY, TimeValue.timeValueSeconds(2).nanos());
+        assertThat(report(operationStats, client, transport, nameCache), contains(
+                "node.n1.latency.query.slower_than_100ms:2|c",
+                "node.n1.latency.query.slower_than_1000ms:1|c"
+        ));
+
+        assertThat(report(operationStats, client, transport, nameCache), empty());
+
+        node.onOperation(StatsdOperationStats.Operation.QUERY, TimeValue.timeValueMillis(200).nanos());
+        assertThat(report(operationStats, client, transport, nameCache), contains(
+                "node.n1.latency.query.slower_than_100ms:1|c"
+        ));
+        client.stop();
+    }
+
+    private static List<String> report(StatsdOperationStats operationStats, BatchingStatsDClient client,
+                                       StatsdMemoryTransport transport, StatsdMetricNameCache nameCache) {
+        new StatsdReporterOperationStats(operationStats, "n1", nameCache).setStatsDClient(client).run();
+        client.flush();
+        List<String> packets = transport.drain();
+        return packets.isEmpty() ? emptyList() : Arrays.asList(packets.get(0).split("\n"));
+    }
+}
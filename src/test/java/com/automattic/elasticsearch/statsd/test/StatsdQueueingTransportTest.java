@@ -0,0 +1,43 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.BatchingStatsDClient;
+import com.automattic.elasticsearch.statsd.StatsdMemoryTransport;
+import com.automattic.elasticsearch.statsd.StatsdQueueingTransport;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StatsdQueueingTransportTest {
+
+    @Test
+    public void testThatQueueingTransportCountsDroppedMetrics() throws Exception {
+        StatsdMemoryTransport memory = new StatsdMemoryTransport();
+        StatsdQueueingTransport transport = new StatsdQueueingTransport(memory, 1, 1432, Thread::new, e -> {
+            throw new AssertionError(e);
+        });
+        BatchingStatsDClient client = new BatchingStatsDClient("", transport, 1432, e -> {
+            throw new AssertionError(e);
+        }, null, null);
+
+        // the sender is not running yet, so the second packet does not fit into the queue anymore
+        client.gauge("a", 1L);
+        client.gauge("b", -2L);
+        client.flush();
+        client.gauge("c", 3L);
+        client.flush();
+
+        assertThat(transport.getEnqueuedMetrics(), is(3L));
+        assertThat(transport.getDroppedMetrics(), is(1L));
+        assertThat(transport.getQueueSize(), is(1));
+
+        transport.start();
+        transport.close();
+
+        assertThat(memory.drain(), contains("a:1|g\nb:0|g\nb:-2|g"));
+        assertThat(transport.getSentMetrics(), is(3L));
+        assertThat(transport.getSentPackets(), is(1L));
+        assertThat(transport.getSendErrors(), is(0L));
+    }
+}
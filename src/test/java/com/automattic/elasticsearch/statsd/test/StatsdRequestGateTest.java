@@ -0,0 +1,48 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.StatsdRequestGate;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class StatsdRequestGateTest {
+
+    @Test
+    public void testThatRunsAreSkippedWhileARequestIsInFlight() {
+        StatsdRequestGate gate = new StatsdRequestGate();
+
+        StatsdRequestGate.Request request = gate.tryStart();
+        assertThat(request, notNullValue());
+        assertThat(gate.tryStart(), nullValue());
+
+        // the response
+        assertThat(request.complete(), is(true));
+        assertThat(gate.tryStart(), nullValue());
+        request.release();
+
+        assertThat(gate.isInFlight(), is(false));
+        assertThat(gate.tryStart(), notNullValue());
+    }
+
+    @Test
+    public void testThatTheTimeoutLetsTheNextRequestStart() {
+        StatsdRequestGate gate = new StatsdRequestGate();
+        StatsdRequestGate.Request timedOut = gate.tryStart();
+
+        // the timeout
+        assertThat(timedOut.complete(), is(true));
+        timedOut.release();
+        StatsdRequestGate.Request next = gate.tryStart();
+        assertThat(next, notNullValue());
+
+        // the late response of the timed out request is dropped and does not free the next one
+        assertThat(timedOut.complete(), is(false));
+        timedOut.release();
+        assertThat(gate.isInFlight(), is(true));
+        assertThat(gate.tryStart(), nullValue());
+        assertThat(next.complete(), is(true));
+    }
+}
@@ -0,0 +1,142 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.BatchingStatsDClient;
+import com.automattic.elasticsearch.statsd.StatsdCounterTracker;
+import com.automattic.elasticsearch.statsd.StatsdMemoryTransport;
+import com.automattic.elasticsearch.statsd.StatsdMetricFilter;
+import com.automattic.elasticsearch.statsd.StatsdMetricNameCache;
+import com.automattic.elasticsearch.statsd.StatsdReporterIndices;
+import com.automattic.elasticsearch.statsd.StatsdShardActivity;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+import static org.elasticsearch.action.admin.indices.stats.IndicesStatsFixtures.commonStats;
+import static org.elasticsearch.action.admin.indices.stats.IndicesStatsFixtures.response;
+import static org.elasticsearch.action.admin.indices.stats.IndicesStatsFixtures.shardStats;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class StatsdShardActivityTest {
+
+    @Test
+    public void testThatIdleShardsAreReportedEveryIdleCycles() {
+        StatsdShardActivity activity = new StatsdShardActivity(3);
+
+        assertThat(activity.shouldReport("a", 0, 1L), is(true));
+        assertThat(activity.shouldReport("a", 0, 1L), is(false));
+        assertThat(activity.shouldReport("a", 0, 1L), is(false));
+        assertThat(activity.shouldReport("a", 0, 1L), is(true));
+        assertThat(activity.shouldReport("a", 0, 1L), is(false));
+    }
+
+    @Test
+    public void testThatChangedShardsAreReportedAtOnce() {
+        StatsdShardActivity activity = new StatsdShardActivity(3);
+
+        assertThat(activity.shouldReport("a", 0, 1L), is(true));
+        assertThat(activity.shouldReport("a", 0, 1L), is(false));
+        assertThat(activity.shouldReport("a", 0, 2L), is(true));
+        // the idle cycles start over from the change
+        assertThat(activity.shouldReport("a", 0, 2L), is(false));
+        assertThat(activity.shouldReport("a", 0, 2L), is(false));
+        assertThat(activity.shouldReport("a", 0, 2L), is(true));
+    }
+
+    @Test
+    public void testThatShardsAreTrackedOnTheirOwn() {
+        StatsdShardActivity activity = new StatsdShardActivity(3);
+
+        assertThat(activity.shouldReport("a", 0, 1L), is(true));
+        assertThat(activity.shouldReport("a", 2, 1L), is(true));
+        assertThat(activity.shouldReport("b", 0, 1L), is(true));
+        assertThat(activity.shouldReport("a", 0, 1L), is(false));
+        assertThat(activity.shouldReport("a", 2, 1L), is(false));
+    }
+
+    @Test
+    public void testThatEvictedIndicesAreReportedAgain() {
+        StatsdShardActivity activity = new StatsdShardActivity(3);
+
+        assertThat(activity.shouldReport("a", 0, 1L), is(true));
+        activity.evictIndex("a");
+        assertThat(activity.shouldReport("a", 0, 1L), is(true));
+    }
+
+    @Test
+    public void testThatEveryShardIsReportedWithOneIdleCycle() {
+        StatsdShardActivity activity = new StatsdShardActivity(1);
+
+        assertThat(activity.shouldReport("a", 0, 1L), is(true));
+        assertThat(activity.shouldReport("a", 0, 1L), is(true));
+    }
+
+    @Test
+    public void testThatTheSignalFollowsTheOperationCounters() {
+        long signal = StatsdShardActivity.signal(commonStats(10, 100, 5, 7));
+
+        assertThat(StatsdShardActivity.signal(commonStats(10, 100, 5, 7)), is(signal));
+        // docs and store size are not operations
+        assertThat(StatsdShardActivity.signal(commonStats(11, 200, 5, 7)), is(signal));
+        assertThat(StatsdShardActivity.signal(commonStats(10, 100, 6, 7)), not(signal));
+        assertThat(StatsdShardActivity.signal(commonStats(10, 100, 5, 8)), not(signal));
+    }
+
+    @Test
+    public void testThatIdleShardsKeepTheirCounterBaselines() {
+        StatsdShardActivity activity = new StatsdShardActivity(StatsdCounterTracker.ROTATION_CYCLES);
+        StatsdCounterTracker counterTracker = new StatsdCounterTracker(StatsdCounterTracker.Mode.COUNT);
+        StatsdMemoryTransport transport = new StatsdMemoryTransport();
+        BatchingStatsDClient client = new BatchingStatsDClient("", transport, 1432, e -> {
+            throw new AssertionError(e);
+        }, null, counterTracker);
+        StatsdMetricNameCache nameCache = new StatsdMetricNameCache(StatsdMetricNameCache.Format.PLAIN, new StatsdMetricFilter(
+                Collections.singletonList("shard.indexing.index_total"), emptyList(), emptyList(), emptyList()
+        ));
+
+        // the first report is the baseline of the counter
+        assertThat(report(activity, counterTracker, client, transport, nameCache, 5), empty());
+        for (int cycle = 1; cycle < 2 * StatsdCounterTracker.ROTATION_CYCLES; cycle++) {
+            // runs skipped while the previous request is still running start no cycle, so only reported cycles
+            // count towards the idle cycles and the rotations of the counter tracker
+            assertThat(report(activity, counterTracker, client, transport, nameCache, 5), empty());
+        }
+        assertThat(report(activity, counterTracker, client, transport, nameCache, 8), contains("index.a.0.indexing.index_total:3|c"));
+        client.stop();
+    }
+
+    /**
+     * Reports one cycle of the cluster wide stats, as the response listener does.
+     */
+    private static List<String> report(StatsdShardActivity activity, StatsdCounterTracker counterTracker,
+                                       BatchingStatsDClient client, StatsdMemoryTransport transport,
+                                       StatsdMetricNameCache nameCache, long indexed) {
+        counterTracker.nextCycle();
+        new StatsdReporterIndices(
+                response(shardStats("a", 0, commonStats(1, 1, indexed, 0))),
+                true,
+                true,
+                null,
+                null,
+                activity,
+                nameCache
+        ).setStatsDClient(client).run();
+        client.flush();
+        List<String> lines = new ArrayList<>();
+        for (String packet : transport.drain()) {
+            Collections.addAll(lines, packet.split("\n"));
+        }
+        return lines;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatIdleCyclesMustBePositive() {
+        new StatsdShardActivity(0);
+    }
+}
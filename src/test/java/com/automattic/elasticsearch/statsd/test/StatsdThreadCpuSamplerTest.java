@@ -0,0 +1,147 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.StatsdThreadCpuSampler;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static com.automattic.elasticsearch.statsd.StatsdThreadCpuSampler.poolOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StatsdThreadCpuSamplerTest {
+
+    private final CountDownLatch stop = new CountDownLatch(1);
+    private final List<Thread> namedThreads = new ArrayList<>();
+    // the thread ids and CPU times seen by the sampler, the names are taken from live threads
+    private final Map<Long, Long> cpu = new HashMap<>();
+    private final Map<Long, Thread> threads = new HashMap<>();
+
+    @After
+    public void stopThreads() throws Exception {
+        this.stop.countDown();
+        for (Thread thread : this.namedThreads) {
+            thread.join();
+        }
+    }
+
+    @Test
+    public void testThatCpuIsSummedUpPerPool() {
+        StatsdThreadCpuSampler sampler = new StatsdThreadCpuSampler(this.threadMXBean());
+        Thread search = this.namedThread("elasticsearch[n1][search][T#1]");
+        Thread bulk = this.namedThread("elasticsearch[n1][bulk][T#1]");
+
+        // threads running before the first sample only count from then on
+        this.sample(1L, search, 100L);
+        sampler.run();
+        // threads started later count entirely
+        this.sample(1L, search, 300L);
+        this.sample(2L, bulk, 40L);
+        sampler.run();
+
+        Map<String, StatsdThreadCpuSampler.Interval> intervals = sampler.nextInterval();
+        assertThat(intervals.get("search").getTotalNanos(), is(200L));
+        assertThat(intervals.get("bulk").getTotalNanos(), is(40L));
+    }
+
+    @Test
+    public void testThatDeadAndReusedThreadsAreNotMixedUp() {
+        StatsdThreadCpuSampler sampler = new StatsdThreadCpuSampler(this.threadMXBean());
+        Thread search = this.namedThread("elasticsearch[n1][search][T#1]");
+        Thread bulk = this.namedThread("elasticsearch[n1][bulk][T#1]");
+        Thread management = this.namedThread("elasticsearch[n1][management][T#1]");
+
+        this.sample(1L, search, 100L);
+        this.sample(2L, bulk, 10L);
+        sampler.run();
+        this.sample(1L, search, 300L);
+        sampler.run();
+
+        // the search thread dies
+        this.cpu.remove(1L);
+        this.sample(2L, bulk, 50L);
+        sampler.run();
+
+        // and its id is reused by a thread of another pool, which counts entirely and not against the old thread
+        this.sample(1L, management, 30L);
+        Map<String, StatsdThreadCpuSampler.Interval> intervals = sampler.nextInterval();
+        assertThat(intervals.get("search").getTotalNanos(), is(200L));
+        assertThat(intervals.get("bulk").getTotalNanos(), is(40L));
+        assertThat(intervals.get("management").getTotalNanos(), is(30L));
+    }
+
+    @Test
+    public void testThatPoolsAreParsedFromElasticsearchThreadNames() {
+        assertThat(poolOf("elasticsearch[node-1][search][T#3]"), is("search"));
+        assertThat(poolOf("elasticsearch[node-1][clusterService#updateTask][T#1]"), is("clusterService#updateTask"));
+        assertThat(poolOf("elasticsearch[node-1][management]"), is("management"));
+        assertThat(poolOf("elasticsearch[node-1][[timer]]"), is("timer"));
+    }
+
+    @Test
+    public void testThatNodeNamesWithBracketsAreSkipped() {
+        assertThat(poolOf("elasticsearch[node]1][search][T#3]"), is("search"));
+        assertThat(poolOf("elasticsearch[node][1][bulk][T#12]"), is("bulk"));
+        assertThat(poolOf("elasticsearch[[node-1]][[timer]]"), is("timer"));
+    }
+
+    @Test
+    public void testThatOtherThreadsAreSummedUp() {
+        assertThat(poolOf("main"), is("other"));
+        assertThat(poolOf("Reference Handler"), is("other"));
+        assertThat(poolOf("pool-1-thread-1[search]"), is("other"));
+        assertThat(poolOf("elasticsearch[keepAlive/5.4.0]"), is("other"));
+        assertThat(poolOf("elasticsearch[node-1"), is("other"));
+        assertThat(poolOf("elasticsearch[node-1][]"), is("other"));
+        assertThat(poolOf(null), is("other"));
+    }
+
+    private void sample(long threadId, Thread thread, long cpuNanos) {
+        this.threads.put(threadId, thread);
+        this.cpu.put(threadId, cpuNanos);
+    }
+
+    private Thread namedThread(String name) {
+        Thread thread = new Thread(() -> {
+            try {
+                this.stop.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, name);
+        thread.start();
+        this.namedThreads.add(thread);
+        return thread;
+    }
+
+    /**
+     * Serves the scripted thread ids and CPU times, and the info of the live thread behind every id.
+     */
+    private ThreadMXBean threadMXBean() {
+        ThreadMXBean real = ManagementFactory.getThreadMXBean();
+        return (ThreadMXBean) Proxy.newProxyInstance(
+                ThreadMXBean.class.getClassLoader(),
+                new Class<?>[]{ThreadMXBean.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getAllThreadIds":
+                            return this.cpu.keySet().stream().mapToLong(Long::longValue).toArray();
+                        case "getThreadCpuTime":
+                            return this.cpu.getOrDefault((Long) args[0], -1L);
+                        case "getThreadInfo":
+                            return real.getThreadInfo(this.threads.get((Long) args[0]).getId(), (Integer) args[1]);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+        );
+    }
+}
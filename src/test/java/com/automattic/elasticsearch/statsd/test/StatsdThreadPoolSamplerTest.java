@@ -0,0 +1,76 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.StatsdThreadPoolSampler;
+import org.elasticsearch.threadpool.ThreadPoolStats;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StatsdThreadPoolSamplerTest {
+
+    private List<ThreadPoolStats.Stats> pools = new ArrayList<>();
+
+    @Test
+    public void testThatSamplesAreAggregatedPerInterval() {
+        StatsdThreadPoolSampler sampler = new StatsdThreadPoolSampler(() -> new ThreadPoolStats(this.pools));
+
+        this.pools = Arrays.asList(pool("bulk", 2, 1), pool("search", 0, 3));
+        sampler.run();
+        this.pools = Arrays.asList(pool("bulk", 4, 2), pool("search", 0, 1));
+        sampler.run();
+        this.pools = Arrays.asList(pool("bulk", 0, 0), pool("search", 0, 0));
+        sampler.run();
+
+        Map<String, StatsdThreadPoolSampler.Interval> intervals = sampler.nextInterval();
+        assertThat(intervals.get("bulk").getQueueMax(), is(4));
+        assertThat(intervals.get("bulk").getQueueAvg(), is(2.0));
+        assertThat(intervals.get("bulk").getActiveMax(), is(2));
+        assertThat(intervals.get("search").getQueueMax(), is(0));
+        assertThat(intervals.get("search").getActiveMax(), is(3));
+
+        // the next interval starts over
+        this.pools = Arrays.asList(pool("bulk", 1, 1), pool("search", 0, 0));
+        sampler.run();
+        intervals = sampler.nextInterval();
+        assertThat(intervals.get("bulk").getQueueMax(), is(1));
+        assertThat(intervals.get("bulk").getQueueAvg(), is(1.0));
+        assertThat(intervals.get("search").getActiveMax(), is(0));
+    }
+
+    @Test
+    public void testThatNothingIsReportedWithoutSamples() {
+        StatsdThreadPoolSampler sampler = new StatsdThreadPoolSampler(() -> new ThreadPoolStats(this.pools));
+
+        assertThat(sampler.nextInterval().isEmpty(), is(true));
+        this.pools = Arrays.asList(pool("bulk", 2, 1));
+        sampler.run();
+        sampler.nextInterval();
+        assertThat(sampler.nextInterval().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testThatChangedPoolsStartOver() {
+        StatsdThreadPoolSampler sampler = new StatsdThreadPoolSampler(() -> new ThreadPoolStats(this.pools));
+
+        this.pools = Arrays.asList(pool("bulk", 8, 8));
+        sampler.run();
+        this.pools = Arrays.asList(pool("bulk", 2, 1), pool("search", 1, 1));
+        sampler.run();
+
+        Map<String, StatsdThreadPoolSampler.Interval> intervals = sampler.nextInterval();
+        assertThat(intervals.size(), is(2));
+        assertThat(intervals.get("bulk").getQueueMax(), is(2));
+        assertThat(intervals.get("bulk").getActiveMax(), is(1));
+        assertThat(intervals.get("search").getQueueAvg(), is(1.0));
+    }
+
+    private static ThreadPoolStats.Stats pool(String name, int queue, int active) {
+        return new ThreadPoolStats.Stats(name, active, queue, active, 0, active, 0);
+    }
+}
@@ -0,0 +1,111 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.BatchingStatsDClient;
+import com.automattic.elasticsearch.statsd.StatsdMemoryTransport;
+import com.automattic.elasticsearch.statsd.StatsdMetricFilter;
+import com.automattic.elasticsearch.statsd.StatsdMetricNameCache;
+import com.automattic.elasticsearch.statsd.StatsdReporterIndices;
+import com.automattic.elasticsearch.statsd.StatsdTopIndices;
+import org.elasticsearch.action.admin.indices.stats.IndexStats;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+import static org.elasticsearch.action.admin.indices.stats.IndicesStatsFixtures.commonStats;
+import static org.elasticsearch.action.admin.indices.stats.IndicesStatsFixtures.indexStats;
+import static org.elasticsearch.action.admin.indices.stats.IndicesStatsFixtures.response;
+import static org.elasticsearch.action.admin.indices.stats.IndicesStatsFixtures.shardStats;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+
+public class StatsdTopIndicesTest {
+
+    @Test
+    public void testThatAllIndicesAreSelectedIfThereAreFewer() {
+        StatsdTopIndices topIndices = new StatsdTopIndices(10, StatsdTopIndices.Dimension.STORE_SIZE);
+
+        assertThat(topIndices.select(Arrays.asList(store("a", 1), store("b", 2))), containsInAnyOrder("a", "b"));
+        assertThat(topIndices.select(emptyList()), empty());
+    }
+
+    @Test
+    public void testThatTheLargestIndicesAreSelected() {
+        StatsdTopIndices topIndices = new StatsdTopIndices(2, StatsdTopIndices.Dimension.STORE_SIZE);
+
+        assertThat(
+                topIndices.select(Arrays.asList(store("a", 10), store("b", 30), store("c", 20), store("d", 5))),
+                containsInAnyOrder("b", "c")
+        );
+    }
+
+    @Test
+    public void testThatTiesKeepTheIndicesSeenFirst() {
+        StatsdTopIndices topIndices = new StatsdTopIndices(2, StatsdTopIndices.Dimension.STORE_SIZE);
+
+        assertThat(
+                topIndices.select(Arrays.asList(store("a", 10), store("b", 10), store("c", 10))),
+                containsInAnyOrder("a", "b")
+        );
+    }
+
+    @Test
+    public void testThatRatesRankByTheIncreaseSinceThePreviousSelection() {
+        StatsdTopIndices topIndices = new StatsdTopIndices(1, StatsdTopIndices.Dimension.INDEXING_RATE);
+
+        // unknown totals rank last, so the first selection is arbitrary
+        topIndices.select(Arrays.asList(indexed("a", 1000), indexed("b", 10)));
+        assertThat(topIndices.select(Arrays.asList(indexed("a", 1001), indexed("b", 20))), containsInAnyOrder("b"));
+        // a reset total ranks last as well
+        assertThat(topIndices.select(Arrays.asList(indexed("a", 1002), indexed("b", 0))), containsInAnyOrder("a"));
+    }
+
+    @Test
+    public void testThatTheOtherIndicesAreSummedUp() throws Exception {
+        StatsdMetricNameCache nameCache = new StatsdMetricNameCache(StatsdMetricNameCache.Format.PLAIN, new StatsdMetricFilter(
+                Arrays.asList("index.store.size_in_bytes"), emptyList(), emptyList(), emptyList()
+        ));
+        StatsdMemoryTransport transport = new StatsdMemoryTransport();
+        BatchingStatsDClient client = new BatchingStatsDClient("", transport, 1432, e -> {
+            throw new AssertionError(e);
+        }, null, null);
+
+        new StatsdReporterIndices(
+                response(
+                        shardStats("a", 0, commonStats(1, 30, 0, 0)),
+                        shardStats("b", 0, commonStats(1, 20, 0, 0)),
+                        shardStats("b", 1, commonStats(1, 5, 0, 0)),
+                        shardStats("c", 0, commonStats(1, 10, 0, 0)),
+                        shardStats("d", 0, commonStats(1, 7, 0, 0))
+                ),
+                true,
+                false,
+                new StatsdTopIndices(2, StatsdTopIndices.Dimension.STORE_SIZE),
+                null,
+                nameCache
+        ).setStatsDClient(client).run();
+        client.flush();
+
+        List<String> lines = new ArrayList<>();
+        for (String packet : transport.drain()) {
+            lines.addAll(Arrays.asList(packet.split("\n")));
+        }
+        assertThat(lines, containsInAnyOrder(
+                "index.a.total.store.size_in_bytes:30|g",
+                "index.b.total.store.size_in_bytes:25|g",
+                "index._other.total.store.size_in_bytes:17|g"
+        ));
+        client.stop();
+    }
+
+    private static IndexStats store(String index, long bytes) {
+        return indexStats(index, commonStats(1, bytes, 0, 0));
+    }
+
+    private static IndexStats indexed(String index, long indexed) {
+        return indexStats(index, commonStats(1, 1, indexed, 0));
+    }
+}
@@ -0,0 +1,62 @@
+package com.automattic.elasticsearch.statsd.test;
+
+import com.automattic.elasticsearch.statsd.BatchingStatsDClient;
+import com.automattic.elasticsearch.statsd.StatsdMemoryTransport;
+import com.automattic.elasticsearch.statsd.StatsdTcpTransport;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StatsdTransportTest {
+
+    @Test
+    public void testThatTcpPacketsAreNewlineTerminated() throws Exception {
+        try (ServerSocket tcpServer = new ServerSocket(0)) {
+            tcpServer.setSoTimeout(2000);
+            BatchingStatsDClient client = new BatchingStatsDClient(
+                    "prefix", new StatsdTcpTransport("localhost", tcpServer.getLocalPort()), 64, e -> {
+                        throw new AssertionError(e);
+                    }, null, null);
+
+            client.gauge("a.b", 1L);
+            client.flush();
+            client.gauge("a.c", 2L);
+            client.gauge("a.d", 3L);
+            client.flush();
+
+            try (Socket socket = tcpServer.accept()) {
+                socket.setSoTimeout(2000);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                assertThat(reader.readLine(), is("prefix.a.b:1|g"));
+                assertThat(reader.readLine(), is("prefix.a.c:2|g"));
+                assertThat(reader.readLine(), is("prefix.a.d:3|g"));
+            }
+            client.stop();
+        }
+    }
+
+    @Test
+    public void testThatMemoryTransportKeepsPackets() throws Exception {
+        StatsdMemoryTransport transport = new StatsdMemoryTransport(1);
+        BatchingStatsDClient client = new BatchingStatsDClient("", transport, 1432, e -> {
+            throw new AssertionError(e);
+        }, null, null);
+
+        client.gauge("a", 1L);
+        client.flush();
+        client.gauge("b", 2L);
+        client.flush();
+
+        assertThat(transport.drain(), contains("b:2|g"));
+        assertThat(transport.drain().isEmpty(), is(true));
+        client.stop();
+    }
+}
@@ -0,0 +1,127 @@
+package org.elasticsearch.action.admin.indices.stats;
+
+import org.elasticsearch.cluster.routing.RecoverySource;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.routing.UnassignedInfo;
+import org.elasticsearch.index.flush.FlushStats;
+import org.elasticsearch.index.get.GetStats;
+import org.elasticsearch.index.refresh.RefreshStats;
+import org.elasticsearch.index.search.stats.SearchStats;
+import org.elasticsearch.index.shard.DocsStats;
+import org.elasticsearch.index.shard.IndexingStats;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.shard.ShardPath;
+import org.elasticsearch.index.store.StoreStats;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Builds small {@link IndicesStatsResponse}s for the reporter tests and large synthetic ones for the benchmarks. Lives
+ * in this package because the response constructor and the stats fields are package private.
+ */
+public final class IndicesStatsFixtures {
+
+    private IndicesStatsFixtures() {
+    }
+
+    public static IndicesStatsResponse response(ShardStats... shards) {
+        return new IndicesStatsResponse(shards, shards.length, shards.length, 0, Collections.emptyList());
+    }
+
+    /**
+     * A response of {@code indices} indices with {@code shards} shards each and made up but realistically sized values.
+     */
+    public static IndicesStatsResponse response(int indices, int shards, long seed) {
+        Random random = new Random(seed);
+        ShardStats[] shardStats = new ShardStats[indices * shards];
+        for (int i = 0; i < indices; i++) {
+            for (int s = 0; s < shards; s++) {
+                shardStats[i * shards + s] = shardStats("index-" + i, s, commonStats(random));
+            }
+        }
+        return response(shardStats);
+    }
+
+    public static IndexStats indexStats(String index, CommonStats... shards) {
+        ShardStats[] shardStats = new ShardStats[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            shardStats[i] = shardStats(index, i, shards[i]);
+        }
+        return new IndexStats(index, shardStats);
+    }
+
+    public static ShardStats shardStats(String index, int shard, CommonStats stats) {
+        ShardId shardId = new ShardId(index, index + "-uuid", shard);
+        ShardRouting routing = ShardRouting
+                .newUnassigned(
+                        shardId,
+                        true,
+                        RecoverySource.StoreRecoverySource.EMPTY_STORE_INSTANCE,
+                        new UnassignedInfo(UnassignedInfo.Reason.INDEX_CREATED, null)
+                )
+                .initialize("node-1", null, 0)
+                .moveToStarted();
+        Path path = Paths.get("data", "nodes", "0", "indices", shardId.getIndex().getUUID(), Integer.toString(shard));
+        return new ShardStats(routing, new ShardPath(false, path, path, shardId), stats, null);
+    }
+
+    /**
+     * Stats with the given docs count, store size, indexed documents and executed queries only.
+     */
+    public static CommonStats commonStats(long docs, long storeBytes, long indexed, long queries) {
+        CommonStats stats = new CommonStats();
+        stats.docs = new DocsStats(docs, 0);
+        stats.store = new StoreStats(storeBytes, 0);
+        stats.indexing = new IndexingStats(
+                new IndexingStats.Stats(indexed, 0, 0, 0, 0, 0, 0, 0, false, 0),
+                null
+        );
+        stats.search = new SearchStats(
+                new SearchStats.Stats(queries, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0),
+                0,
+                null
+        );
+        return stats;
+    }
+
+    /**
+     * Stats with made up but realistically sized docs, store, indexing, get, search, refresh and flush values.
+     */
+    public static CommonStats commonStats(Random random) {
+        CommonStats stats = new CommonStats(CommonStatsFlags.ALL);
+        stats.docs = new DocsStats(positive(random, 10_000_000), positive(random, 100_000));
+        stats.store = new StoreStats(positive(random, 50_000_000_000L), positive(random, 100_000));
+        stats.indexing = new IndexingStats(
+                new IndexingStats.Stats(
+                        positive(random, 10_000_000), positive(random, 1_000_000), positive(random, 10),
+                        positive(random, 1_000), positive(random, 100_000), positive(random, 100_000),
+                        positive(random, 10), positive(random, 1_000), false, positive(random, 100_000)
+                ),
+                null
+        );
+        stats.get = new GetStats(
+                positive(random, 1_000_000), positive(random, 100_000), positive(random, 1_000_000),
+                positive(random, 100_000), positive(random, 10)
+        );
+        stats.search = new SearchStats(
+                new SearchStats.Stats(
+                        positive(random, 1_000_000), positive(random, 1_000_000), positive(random, 10),
+                        positive(random, 1_000_000), positive(random, 1_000_000), positive(random, 10),
+                        positive(random, 1_000), positive(random, 100_000), positive(random, 10),
+                        positive(random, 1_000), positive(random, 100_000), positive(random, 10)
+                ),
+                positive(random, 10),
+                null
+        );
+        stats.refresh = new RefreshStats(positive(random, 100_000), positive(random, 1_000_000), 0);
+        stats.flush = new FlushStats(positive(random, 10_000), positive(random, 1_000_000));
+        return stats;
+    }
+
+    private static long positive(Random random, long bound) {
+        return (random.nextLong() >>> 1) % bound;
+    }
+}